@@ -21,8 +21,11 @@ package de.milux.ordol;
 import de.milux.ordol.algo.ApproxMethodMatching;
 import de.milux.ordol.algo.MatchingWrapper;
 import de.milux.ordol.algo.MethodMatching;
+import de.milux.ordol.binary.BitIndex;
+import de.milux.ordol.binary.Codecs;
 import de.milux.ordol.data.*;
 import de.milux.ordol.helpers.*;
+import io.vavr.Lazy;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
 import io.vavr.Tuple3;
@@ -46,6 +49,7 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -63,6 +67,8 @@ public class AppAnalyzer implements CLIDispatcher {
       Collections.synchronizedMap(new HashMap<>());
   private static final AtomicInteger threadEnumerator = new AtomicInteger(0);
   private long threadId = threadEnumerator.incrementAndGet();
+  private boolean useAppCache = true;
+  private boolean useBitIndex = true;
 
   @Override
   public Options getOptions() {
@@ -148,6 +154,50 @@ public class AppAnalyzer implements CLIDispatcher {
                 .build())
         .addOption(
             Option.builder("bench").desc("Add benchmark data (timings) to output result.").build())
+        .addOption(
+            Option.builder("nc")
+                .longOpt("no-cache")
+                .desc("Always extract app classes with Soot, do not use or fill the app cache.")
+                .build())
+        .addOption(
+            Option.builder("mh")
+                .longOpt("minhash")
+                .desc(
+                    "Select candidate libraries by LSH over MinHash sketches "
+                        + "instead of the BitSet test.")
+                .build())
+        .addOption(
+            Option.builder("ni")
+                .longOpt("no-index")
+                .desc(
+                    "Intersect the app bitset with each library bitset, "
+                        + "instead of using the inverted bit index.")
+                .build())
+        .addOption(
+            Option.builder("fo")
+                .longOpt("folded")
+                .desc(
+                    "Test the bound from folded BitSets before intersecting the app bitset "
+                        + "with a library bitset.")
+                .build())
+        .addOption(
+            Option.builder("rs")
+                .longOpt("rescan")
+                .desc(
+                    "Ignore the corpus pack and scan the library directory, e.g. after "
+                        + "signatures have been changed by other means than the process command.")
+                .build())
+        .addOption(
+            Option.builder("bc")
+                .longOpt("bitset-codec")
+                .hasArg()
+                .argName("codec")
+                .desc(
+                    "The codec of the library bitset cache, one of "
+                        + Codecs.getNames()
+                        + ", default: "
+                        + BITSET_CODEC.getName())
+                .build())
         .addOption(
             Option.builder("f")
                 .longOpt("force")
@@ -199,10 +249,17 @@ public class AppAnalyzer implements CLIDispatcher {
     SCAN_RANGE = CLIHelper.validateDouble(cmd, "scr", 0., 1., SCAN_RANGE);
     // override benchmark flag
     LOG_BENCHMARKS = cmd.hasOption("bench") || LOG_BENCHMARKS;
+    useAppCache = !cmd.hasOption("nc");
+    useBitIndex = !cmd.hasOption("ni");
+    MINHASH_PREFILTER = cmd.hasOption("mh") || MINHASH_PREFILTER;
+    FOLDED_PREFILTER = cmd.hasOption("fo") || FOLDED_PREFILTER;
+    USE_CORPUS_PACK = !cmd.hasOption("rs") && USE_CORPUS_PACK;
+    BITSET_CODEC = CLIHelper.validateCodec(cmd, "bc", BITSET_CODEC);
     // read the threshold expressions, if they have been defined
-    BITSET_THRESHOLD = cmd.getOptionValue("bsth", BITSET_THRESHOLD);
-    DETECT_THRESHOLD = cmd.getOptionValue("dtth", DETECT_THRESHOLD);
-    // warm-up expression cache
+    BITSET_THRESHOLD =
+        CLIHelper.validateFormula(cmd, "bsth", "size", "appBsPop", BITSET_THRESHOLD);
+    DETECT_THRESHOLD = CLIHelper.validateFormula(cmd, "dtth", "size", null, DETECT_THRESHOLD);
+    // warm-up formula cache
     Utils.getBitSetThreshold(0, 0);
     Utils.getDetectionThreshold(0);
 
@@ -295,32 +352,8 @@ public class AppAnalyzer implements CLIDispatcher {
       throw new RuntimeException("Error: No bin/src directory found under " + appPath);
     }
 
-    List<ClassData> appClasses;
     LongHolder tsAll = new LongHolder();
-    synchronized (soot.G.class) {
-      Utils.syncPrint(threadId, "Soot processing...");
-      tsAll.setCurrentTimeMillis();
-      // call configuration functions
-      configure(appPath);
-      // prepare necessary classes and run packs
-      Scene.v().loadNecessaryClasses();
-      PackManager.v().runPacks();
-      // benchmark Soot time
-      Utils.syncPrint(threadId, Utils.benchmark(tsAll, "Soot"));
-      Utils.syncPrint();
-      Utils.syncPrint(threadId, "ANALYZE " + appPath + "\n");
-      // benchmark full analysis time
-      tsAll.setCurrentTimeMillis();
-      // create List of application classes
-      appClasses =
-          Scene.v()
-              .getApplicationClasses()
-              .stream()
-              .map(ClassData::new)
-              .collect(CustomCollectors.toCompactList());
-      // free memory occupied by Soot
-      soot.G.reset();
-    }
+    final List<ClassData> appClasses = getAppClasses(appPath, tsAll);
 
     // analyze app package structure
     PkgNode appDefaultPkg = new PkgNode();
@@ -335,6 +368,23 @@ public class AppAnalyzer implements CLIDispatcher {
     // remove excluded libraries
     libraryMap.keySet().removeIf(name -> EXCLUDE_LIBS.matcher(name).matches());
 
+    // K-gram BitSet of the remaining app classes, updated whenever classes are removed
+    AppBitSet appBits =
+        new AppBitSet(
+            appClasses.stream().map(ClassData::getKGramHashArray).collect(Collectors.toList()),
+            M_PRIME);
+    // one pass over the app bits counts the common bits with all indexed libraries, afterwards the
+    // counts are decremented for each cleared bit
+    LongHolder tsIndex = LongHolder.currentTimeMillis();
+    BitIndex bitIndex = useBitIndex && !MINHASH_PREFILTER ? IOHelper.getBitIndex() : null;
+    int[] bitHits =
+        bitIndex != null
+            ? bitIndex.countHits(CompressedBitSet.ofBitmaps(appBits.getBits()))
+            : null;
+    if (bitIndex != null) {
+      Utils.syncPrint(threadId, Utils.benchmark(tsIndex, "Bit Index"));
+    }
+
     // app class indices lookup map
     Map<ClassData, Integer> appClassIndices = new HashMap<>();
     IndexedList.of(appClasses).forEach((i, ac) -> appClassIndices.put(ac, i));
@@ -349,11 +399,13 @@ public class AppAnalyzer implements CLIDispatcher {
       finCount.set(0);
       // reorder libraries to start off with the best ones (according to bit hashes)
       TreeMap<Double, List<Map.Entry<String, String>>> scanCandidates =
-          getCandidates(appClasses, libraryMap);
+          getCandidates(appBits, bitIndex, bitHits, libraryMap);
       // stop here if there are no libraries left to check
       if (scanCandidates.isEmpty()) {
         break;
       }
+      // the remaining app classes blocked by the hard constraints of the class matching
+      ClassBlocks appBlocks = new ClassBlocks(appClasses);
       // some precautions to prevent infinite loops
       double lastKey = scanCandidates.lastKey();
       double lowerKey = 0.;
@@ -379,7 +431,12 @@ public class AppAnalyzer implements CLIDispatcher {
                                     Tuple4<String, String, List<String>, Set<ClassData>>>
                                 result =
                                     scanForLib(
-                                        name, dataPath, appClasses, appClassIndices, jobSize);
+                                        name,
+                                        dataPath,
+                                        appClasses,
+                                        appClassIndices,
+                                        appBlocks,
+                                        jobSize);
                             if (result != null) {
                               // if library passed the scan, add the result to the result map
                               synchronized (results) {
@@ -433,6 +490,18 @@ public class AppAnalyzer implements CLIDispatcher {
                                 // store the result in the results log
                                 resultLogStore.add(library._3);
                                 // remove all detected application classes from the library
+                                appClasses
+                                    .stream()
+                                    .filter(library._4::contains)
+                                    .forEach(
+                                        ac ->
+                                            appBits.remove(
+                                                ac.getKGramHashArray(),
+                                                bit -> {
+                                                  if (bitHits != null) {
+                                                    bitIndex.removeHits(bitHits, bit);
+                                                  }
+                                                }));
                                 appClasses.removeAll(library._4);
                               }
                               // mark all classes as seen
@@ -474,47 +543,140 @@ public class AppAnalyzer implements CLIDispatcher {
   }
 
   /**
-   * This method executes the BitSet filter and returns an ordered map of libraries which might be
-   * detected among the available app classes. This method removes elements from the libraryMap
-   * parameter which fail the filter.
+   * This method executes the BitSet (or MinHash) filter and returns an ordered map of libraries
+   * which might be detected among the available app classes. This method removes elements from the
+   * libraryMap parameter which fail the filter. With the MinHash filter, only the libraries sharing
+   * an LSH band with the app are looked at, all other libraries are left in the libraryMap.
    *
-   * @param appClasses The ClassData objects representing the available application classes
+   * @param appBits The BitSet of the K-grams of the remaining application classes
+   * @param bitIndex The bit index, or null if libraries are not looked up in the index
+   * @param bitHits The common bits of the app with each library of the bit index
    * @param libraryMap The map of library names and corresponding paths to load their signatures
    *     from
    * @return An ordered Map of all libraries that passed the filter.
    */
   private TreeMap<Double, List<Map.Entry<String, String>>> getCandidates(
-      @Nonnull List<ClassData> appClasses, @Nonnull Map<String, String> libraryMap) {
-    // make a BitSet for all K-grams that currently exist in all the (remaining) application methods
-    Set<Integer> appHashes = new HashSet<>();
-    appClasses.forEach(ac -> ac.forEach(am -> appHashes.addAll(am.getKGramHashes())));
-    BitSet appBitSet = Utils.makeBitSet(appHashes, M_PRIME);
-    double appBitSetPop = (double) appBitSet.cardinality() / (double) M_PRIME;
+      @Nonnull AppBitSet appBits,
+      BitIndex bitIndex,
+      int[] bitHits,
+      @Nonnull Map<String, String> libraryMap) {
+    LongHolder ts = LongHolder.currentTimeMillis();
+    double appBitSetPop = (double) appBits.cardinality() / (double) M_PRIME;
     Utils.syncPrint(threadId, Utils.toPercent(appBitSetPop) + " of app BitSet populated");
-    // free the RAM occupied by the BitSet
-    appHashes.clear();
+    // only needed for libraries missing from the bit index
+    Lazy<CompressedBitSet> appBitSet = Lazy.of(() -> CompressedBitSet.ofBitmaps(appBits.getBits()));
+    Lazy<int[]> appBinCounts =
+        Lazy.of(() -> FoldedBitSet.fold(appBitSet.get(), FOLD_BINS, M_PRIME));
+    // common bits with the union and intersection of each library family
+    Map<String, int[]> familyHits = new ConcurrentHashMap<>();
+    // alternatively, LSH finds the libraries sharing a band with the app sketch
+    Map<String, Double> lshHits =
+        MINHASH_PREFILTER
+            ? IOHelper.getMinHashLSH().query(MinHash.of(appBits.getHashes(), MINHASH_SIZE))
+            : null;
+    String filterName = MINHASH_PREFILTER ? "MinHash" : "BitSet";
+    Collection<Map.Entry<String, String>> libraries;
+    if (lshHits != null) {
+      // look up the LSH hits instead of iterating over all libraries
+      libraries = new ArrayList<>(lshHits.size());
+      lshHits.forEach(
+          (name, containment) -> {
+            String path = libraryMap.get(name);
+            if (path != null) {
+              libraries.add(new AbstractMap.SimpleImmutableEntry<>(name, path));
+            }
+          });
+    } else {
+      libraries = libraryMap.entrySet();
+    }
     finCount.set(0);
     // reorder libraries to start off with the best ones (according to bit hashes)
     TreeMap<Double, List<Map.Entry<String, String>>> scanCandidates =
-        libraryMap
-            .entrySet()
+        libraries
             .parallelStream()
             .collect(
                 Collectors.toMap(
                     e -> {
                       try {
-                        BitSetWrapper libBitSet = IOHelper.BITSET_CACHE.get(e.getValue());
-                        BitSet andBitSet = (BitSet) appBitSet.clone();
-                        andBitSet.and(libBitSet.bitSet);
-                        double libBits = libBitSet.popCount;
-                        double bitScore = andBitSet.cardinality() / libBits;
+                        int libId =
+                            bitHits != null
+                                ? bitIndex.getLibraryId(IOHelper.toPackKey(e.getValue()))
+                                : -1;
+                        double libBits;
+                        double commonBits;
+                        if (lshHits != null) {
+                          // estimated number of library k-grams contained in the app
+                          libBits = IOHelper.MINHASH_CACHE.get(e.getValue()).size;
+                          commonBits = lshHits.get(e.getKey()) * libBits;
+                        } else if (libId >= 0) {
+                          libBits = bitIndex.getPopCount(libId);
+                          commonBits = bitHits[libId];
+                        } else {
+                          // the family test bounds the common bits of all versions of a family,
+                          // so the BitSets of versions need not be loaded for most families
+                          String familyName = IOHelper.getFamilyName(e.getKey());
+                          LibraryFamily family = IOHelper.FAMILY_CACHE.get(familyName);
+                          int popCount = family.getPopCount(IOHelper.toPackKey(e.getValue()));
+                          if (popCount > 0) {
+                            int[] hits =
+                                familyHits.computeIfAbsent(
+                                    familyName,
+                                    f ->
+                                        new int[] {
+                                          appBitSet.get().andCardinality(family.union),
+                                          appBitSet.get().andCardinality(family.intersection)
+                                        });
+                            double maxScore =
+                                (double) family.getUpperBound(hits[0], hits[1], popCount)
+                                    / popCount;
+                            double threshold = Utils.getBitSetThreshold(popCount, appBitSetPop);
+                            if (maxScore < threshold) {
+                              Utils.syncPrint(
+                                  threadId,
+                                  "Skip library "
+                                      + e.getKey()
+                                      + " because of family BitSet test: "
+                                      + maxScore
+                                      + " < "
+                                      + threshold);
+                              return Double.NaN;
+                            }
+                          }
+                          CompressedBitSet libBitSet = IOHelper.BITSET_CACHE.get(e.getValue());
+                          libBits = libBitSet.cardinality();
+                          if (FOLDED_PREFILTER) {
+                            // common bits fall into the same bin, so no bin holds more of them
+                            // than the smaller count of the app and the library
+                            double maxScore =
+                                IOHelper.FOLDED_CACHE
+                                        .get(e.getValue())
+                                        .getUpperBound(appBinCounts.get())
+                                    / libBits;
+                            double threshold = Utils.getBitSetThreshold(libBits, appBitSetPop);
+                            if (maxScore < threshold) {
+                              Utils.syncPrint(
+                                  threadId,
+                                  "Skip library "
+                                      + e.getKey()
+                                      + " because of folded BitSet test: "
+                                      + maxScore
+                                      + " < "
+                                      + threshold);
+                              return Double.NaN;
+                            }
+                          }
+                          commonBits = appBitSet.get().andCardinality(libBitSet);
+                        }
+                        double bitScore = commonBits / libBits;
                         double bitSetThreshold = Utils.getBitSetThreshold(libBits, appBitSetPop);
                         if (bitScore < bitSetThreshold || Double.isNaN(bitScore)) {
                           Utils.syncPrint(
                               threadId,
                               "Skip library "
                                   + e.getKey()
-                                  + " because of BitSet test: "
+                                  + " because of "
+                                  + filterName
+                                  + " test: "
                                   + bitScore
                                   + " < "
                                   + bitSetThreshold);
@@ -523,11 +685,16 @@ public class AppAnalyzer implements CLIDispatcher {
                         } else {
                           Utils.syncPrint(
                               threadId,
-                              "Library " + e.getKey() + " accepted, BitSet match: " + bitScore);
+                              "Library "
+                                  + e.getKey()
+                                  + " accepted, "
+                                  + filterName
+                                  + " match: "
+                                  + bitScore);
                         }
                         return bitScore;
                       } catch (Exception x) {
-                        System.err.println("Could not read BitSet for " + e.getKey());
+                        System.err.println("Could not read " + filterName + " for " + e.getKey());
                         x.printStackTrace();
                         return Double.NaN;
                       }
@@ -547,6 +714,7 @@ public class AppAnalyzer implements CLIDispatcher {
       // remove the NaN key
       scanCandidates.remove(Double.NaN);
     }
+    Utils.syncPrint(threadId, Utils.benchmark(ts, filterName + " Filter"));
     return scanCandidates;
   }
 
@@ -558,6 +726,7 @@ public class AppAnalyzer implements CLIDispatcher {
    * @param appClasses The ClassData objects representing the available app classes
    * @param appClassIndices A lookup map which maps ClassData objects to their index in the class
    *     list
+   * @param appBlocks The app classes blocked by the hard constraints of the class matching
    * @param jobSize The total number of libraries in process in this round for progress output
    * @return A result tuple, containing the numeric detection result (), name, lastRoundResult,
    *     eventLog, cm.getMatchedColumns()
@@ -568,6 +737,7 @@ public class AppAnalyzer implements CLIDispatcher {
           @Nonnull String dataPath,
           @Nonnull List<ClassData> appClasses,
           @Nonnull Map<ClassData, Integer> appClassIndices,
+          @Nonnull ClassBlocks appBlocks,
           int jobSize) {
     Tuple2<Tuple2<Double, Double>, Tuple4<String, String, List<String>, Set<ClassData>>> result =
         null;
@@ -602,7 +772,9 @@ public class AppAnalyzer implements CLIDispatcher {
         new MatchingWrapper<>(
             libClasses,
             appClasses,
-            (lc, ac) -> new ApproxMethodMatching(lc, ac).getClassSimilarity());
+            (lc, ac) -> new ApproxMethodMatching(lc, ac).getClassSimilarity(),
+            appBlocks::getCandidates,
+            true);
     // final reference to the first matching for maintaining perfect matchings
     final MatchingWrapper<ClassData, ClassData> firstCm = cm;
     if (LOG_BENCHMARKS) {
@@ -754,7 +926,8 @@ public class AppAnalyzer implements CLIDispatcher {
       lastRoundResult = Utils.freeBuilder(sb);
       eventLog.add(lastRoundResult);
 
-      // create new matching based on type mappings
+      // create new matching based on type mappings, reusing unchanged parts of the last one
+      typeMap.normalize();
       cm =
           new MatchingWrapper<>(
               libClasses,
@@ -769,7 +942,10 @@ public class AppAnalyzer implements CLIDispatcher {
                 } else {
                   return mapVal;
                 }
-              });
+              },
+              appBlocks::getSizeCandidates,
+              cm,
+              true);
     }
     if (!Double.isNaN(matchScore) && matchScore * coverageScore >= adaptiveThreshold) {
       // return found candidate library
@@ -839,6 +1015,59 @@ public class AppAnalyzer implements CLIDispatcher {
     return result;
   }
 
+  /**
+   * Extracts the classes of the given app with Soot, or loads them from the app cache if the same
+   * APK has already been processed with the same settings.
+   *
+   * @param appPath The path of the APK
+   * @param tsAll Timer, reset to the start of the analysis when the classes are available
+   * @return The ClassData objects of all application classes
+   */
+  private List<ClassData> getAppClasses(Path appPath, LongHolder tsAll) {
+    List<ClassData> appClasses = null;
+    String cacheKey = useAppCache ? IOHelper.getAppCacheKey(appPath) : null;
+    if (cacheKey != null) {
+      tsAll.setCurrentTimeMillis();
+      appClasses = IOHelper.getCachedAppClasses(cacheKey);
+      if (appClasses != null) {
+        Utils.syncPrint(threadId, Utils.benchmark(tsAll, "Load cached app classes"));
+        Utils.syncPrint();
+        Utils.syncPrint(threadId, "ANALYZE " + appPath + "\n");
+        tsAll.setCurrentTimeMillis();
+      }
+    }
+    if (appClasses == null) {
+      synchronized (soot.G.class) {
+        Utils.syncPrint(threadId, "Soot processing...");
+        tsAll.setCurrentTimeMillis();
+        // call configuration functions
+        configure(appPath);
+        // prepare necessary classes and run packs
+        Scene.v().loadNecessaryClasses();
+        PackManager.v().runPacks();
+        // benchmark Soot time
+        Utils.syncPrint(threadId, Utils.benchmark(tsAll, "Soot"));
+        Utils.syncPrint();
+        Utils.syncPrint(threadId, "ANALYZE " + appPath + "\n");
+        // benchmark full analysis time
+        tsAll.setCurrentTimeMillis();
+        // create List of application classes
+        appClasses =
+            Scene.v()
+                .getApplicationClasses()
+                .stream()
+                .map(ClassData::new)
+                .collect(CustomCollectors.toCompactList());
+        // free memory occupied by Soot
+        soot.G.reset();
+        if (cacheKey != null) {
+          IOHelper.cacheAppClasses(cacheKey, appClasses);
+        }
+      }
+    }
+    return appClasses;
+  }
+
   private static void configure(Path analyzeDir) {
     soot.G.reset();
     G.v().out =
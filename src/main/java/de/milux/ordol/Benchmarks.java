@@ -0,0 +1,741 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import de.milux.ordol.algo.ApproxMethodMatching;
+import de.milux.ordol.algo.MWBMatchingAlgorithm;
+import de.milux.ordol.algo.MatchingWrapper;
+import de.milux.ordol.algo.SparseMatchingAlgorithm;
+import de.milux.ordol.binary.BitIndex;
+import de.milux.ordol.binary.Codec;
+import de.milux.ordol.binary.Codecs;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.CompressedBitSet;
+import de.milux.ordol.data.FoldedBitSet;
+import de.milux.ordol.data.MethodData;
+import de.milux.ordol.helpers.CLIDispatcher;
+import de.milux.ordol.helpers.IOHelper;
+import de.milux.ordol.helpers.Kernels;
+import de.milux.ordol.helpers.LongHolder;
+import de.milux.ordol.helpers.ScalarKernels;
+import de.milux.ordol.helpers.Utils;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Micro benchmarks for performance-critical parts of ordol. Each mode runs a number of rounds and
+ * reports time and (if supported by the JVM) the bytes allocated by the benchmark thread.
+ */
+public class Benchmarks implements CLIDispatcher {
+  private static final String JSON_MODE = "json";
+  private static final String CODEC_MODE = "codec";
+  private static final String BITSET_MODE = "bitset";
+  private static final String INDEX_MODE = "index";
+  private static final String FOLD_MODE = "fold";
+  private static final String KERNEL_MODE = "kernel";
+  private static final String MATCHING_MODE = "matching";
+  /** The numbers of bins of the folded bitsets */
+  private static final int[] FOLD_BINS = {1 << 16, 1 << 20};
+  /** Maximum number of classes for the pairwise bitset similarity benchmark */
+  private static final int MAX_CLASSES = 1000;
+
+  private int rounds;
+  private int count;
+  /** Consumes results that would otherwise be eliminated by the JIT */
+  private long checksum;
+
+  @Override
+  public Options getOptions() {
+    return new Options()
+        .addOption(
+            Option.builder("m")
+                .longOpt("mode")
+                .hasArg()
+                .argName(
+                    JSON_MODE
+                        + "|"
+                        + CODEC_MODE
+                        + "|"
+                        + BITSET_MODE
+                        + "|"
+                        + INDEX_MODE
+                        + "|"
+                        + FOLD_MODE
+                        + "|"
+                        + KERNEL_MODE
+                        + "|"
+                        + MATCHING_MODE)
+                .desc("The benchmark to run, default: " + JSON_MODE)
+                .build())
+        .addOption(
+            Option.builder("r")
+                .longOpt("rounds")
+                .hasArg()
+                .argName("n")
+                .desc("Number of rounds, the first ones serve as warm-up, default: 3")
+                .build())
+        .addOption(
+            Option.builder("n")
+                .longOpt("count")
+                .hasArg()
+                .argName("n")
+                .desc("Number of (largest) libraries to use, default: 5")
+                .build());
+  }
+
+  @Override
+  public void dispatch(CommandLine cmd, Options options) throws ParseException {
+    this.rounds = Integer.parseInt(cmd.getOptionValue("r", "3"));
+    this.count = Integer.parseInt(cmd.getOptionValue("n", "5"));
+    String mode = cmd.getOptionValue("m", JSON_MODE);
+    try {
+      switch (mode) {
+        case JSON_MODE:
+          benchmarkJson();
+          break;
+        case CODEC_MODE:
+          benchmarkCodecs();
+          break;
+        case BITSET_MODE:
+          benchmarkBitSets();
+          break;
+        case INDEX_MODE:
+          benchmarkBitIndex();
+          break;
+        case FOLD_MODE:
+          benchmarkFolding();
+          break;
+        case KERNEL_MODE:
+          benchmarkKernels();
+          break;
+        case MATCHING_MODE:
+          benchmarkMatching();
+          break;
+        default:
+          throw new ParseException("Unknown benchmark mode " + mode);
+      }
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  /** @return The largest JSON signatures (of any codec) in the library directory */
+  private List<Path> getLargestLibraries() {
+    List<Path> files = new ArrayList<>();
+    IOHelper.visitAllFiles(
+        Constants.LIBS_DIRECTORY,
+        file -> {
+          if (Codecs.forPath(file, IOHelper.JSON_EXT) != null) {
+            files.add(file);
+          }
+        });
+    files.sort(Comparator.comparingLong((Path p) -> p.toFile().length()).reversed());
+    return files.subList(0, Math.min(count, files.size()));
+  }
+
+  /** Measures decoding of compressed JSON signatures, including decompression */
+  private void benchmarkJson() throws IOException {
+    List<Path> files = getLargestLibraries();
+    long[] rawSizes = new long[files.size()];
+    for (int i = 0; i < files.size(); i++) {
+      rawSizes[i] = decode(files.get(i)).remaining();
+    }
+    for (int r = 1; r <= rounds; r++) {
+      long totalNanos = 0L;
+      long totalAlloc = 0L;
+      long totalRaw = 0L;
+      for (int i = 0; i < files.size(); i++) {
+        Path file = files.get(i);
+        System.gc();
+        long alloc = getAllocatedBytes();
+        long ts = System.nanoTime();
+        List<ClassData> cdList = IOHelper.getClassData(file);
+        long nanos = System.nanoTime() - ts;
+        alloc = getAllocatedBytes() - alloc;
+        totalNanos += nanos;
+        totalAlloc += alloc;
+        totalRaw += rawSizes[i];
+        if (r == rounds) {
+          Utils.println(
+              Constants.LIBS_DIRECTORY.relativize(file)
+                  + ": "
+                  + cdList.size()
+                  + " classes, "
+                  + formatResult(nanos, rawSizes[i], alloc));
+        }
+      }
+      Utils.println("Round " + r + ": " + formatResult(totalNanos, totalRaw, totalAlloc));
+    }
+  }
+
+  /**
+   * Compares the codecs on the JSON signatures and library bitsets of the largest libraries. The
+   * encoded data is written to temporary files, decoding includes reading these files (usually
+   * from the page cache) and one pass over the decoded data.
+   */
+  private void benchmarkCodecs() throws IOException {
+    List<Path> files = getLargestLibraries();
+    List<byte[]> jsonData = new ArrayList<>();
+    List<byte[]> bitSetData = new ArrayList<>();
+    for (Path file : files) {
+      ByteBuffer json = decode(file);
+      byte[] jsonBytes = new byte[json.remaining()];
+      json.get(jsonBytes);
+      jsonData.add(jsonBytes);
+      int[] hashes =
+          Utils.unionSorted(
+              IOHelper.getClassData(file)
+                  .stream()
+                  .map(ClassData::getKGramHashArray)
+                  .collect(Collectors.toList()));
+      bitSetData.add(Utils.makeBitSet(hashes, Constants.M_PRIME).toByteArray());
+    }
+    Utils.println("JSON signatures of " + files.size() + " libraries:");
+    benchmarkCodecs(jsonData);
+    Utils.println("Bitsets of " + files.size() + " libraries:");
+    benchmarkCodecs(bitSetData);
+  }
+
+  /**
+   * Compares the intersection cardinality of a cloned and ANDed {@link BitSet} with {@link
+   * Utils#andCount}. Libraries: the bitsets of the largest libraries against their union (in place
+   * of an app bitset). Classes: all pairs of the class bitsets of these libraries, as compared by
+   * {@link Utils#getBitSetSimilarity}.
+   */
+  private void benchmarkBitSets() throws IOException {
+    List<Path> files = getLargestLibraries();
+    List<BitSet> libBitSets = new ArrayList<>();
+    List<ClassData> classes = new ArrayList<>();
+    BitSet union = new BitSet();
+    for (Path file : files) {
+      List<ClassData> cdList = IOHelper.getClassData(file);
+      classes.addAll(cdList);
+      BitSet bitSet =
+          Utils.makeBitSet(
+              Utils.unionSorted(
+                  cdList.stream().map(ClassData::getKGramHashArray).collect(Collectors.toList())),
+              Constants.M_PRIME);
+      libBitSets.add(bitSet);
+      union.or(bitSet);
+    }
+    long[] unionWords = union.toLongArray();
+    List<long[]> libWords =
+        libBitSets.stream().map(BitSet::toLongArray).collect(Collectors.toList());
+    long libBytes = (long) libBitSets.size() * unionWords.length * 8L;
+
+    classes = classes.subList(0, Math.min(MAX_CLASSES, classes.size()));
+    int n = classes.size();
+    int[] primeIdx = new int[n];
+    long[][][] classWords = new long[n][][];
+    BitSet[][] classBitSets = new BitSet[n][];
+    for (int i = 0; i < n; i++) {
+      ClassData cd = classes.get(i);
+      primeIdx[i] = cd.getHashPrimeIdx();
+      classWords[i] = cd.getBitSets();
+      classBitSets[i] =
+          Arrays.stream(classWords[i]).map(BitSet::valueOf).toArray(BitSet[]::new);
+    }
+    long classBytes = 0L;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        if (primeIdx[i] >= 0 && primeIdx[j] >= 0) {
+          int pIdx = Math.max(primeIdx[i], primeIdx[j]);
+          classBytes += 8L * Math.min(classWords[i][pIdx].length, classWords[j][pIdx].length);
+        }
+      }
+    }
+
+    for (int r = 1; r <= rounds; r++) {
+      System.gc();
+      long alloc = getAllocatedBytes();
+      long ts = System.nanoTime();
+      for (BitSet bitSet : libBitSets) {
+        BitSet andBitSet = (BitSet) union.clone();
+        andBitSet.and(bitSet);
+        checksum += andBitSet.cardinality();
+      }
+      String libClone = formatResult(System.nanoTime() - ts, libBytes, getAllocatedBytes() - alloc);
+
+      alloc = getAllocatedBytes();
+      ts = System.nanoTime();
+      for (long[] words : libWords) {
+        checksum += Utils.andCount(unionWords, words);
+      }
+      String libKernel =
+          formatResult(System.nanoTime() - ts, libBytes, getAllocatedBytes() - alloc);
+
+      System.gc();
+      alloc = getAllocatedBytes();
+      ts = System.nanoTime();
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          if (primeIdx[i] >= 0 && primeIdx[j] >= 0) {
+            int pIdx = Math.max(primeIdx[i], primeIdx[j]);
+            BitSet tmpBs = (BitSet) classBitSets[i][pIdx].clone();
+            tmpBs.and(classBitSets[j][pIdx]);
+            checksum += tmpBs.cardinality();
+          }
+        }
+      }
+      String classClone =
+          formatResult(System.nanoTime() - ts, classBytes, getAllocatedBytes() - alloc);
+
+      alloc = getAllocatedBytes();
+      ts = System.nanoTime();
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          if (primeIdx[i] >= 0 && primeIdx[j] >= 0) {
+            int pIdx = Math.max(primeIdx[i], primeIdx[j]);
+            checksum += Utils.andCount(classWords[i][pIdx], classWords[j][pIdx]);
+          }
+        }
+      }
+      String classKernel =
+          formatResult(System.nanoTime() - ts, classBytes, getAllocatedBytes() - alloc);
+
+      Utils.println("Round " + r + ":");
+      Utils.println("  " + libBitSets.size() + " libraries, clone: " + libClone);
+      Utils.println("  " + libBitSets.size() + " libraries, andCount: " + libKernel);
+      Utils.println("  " + n + "^2 class pairs, clone: " + classClone);
+      Utils.println("  " + n + "^2 class pairs, andCount: " + classKernel);
+    }
+  }
+
+  /**
+   * Compares the candidate scoring of all libraries in the library map, intersecting each (cached)
+   * compressed library bitset vs. one pass over the inverted bit index. The union of the largest
+   * libraries takes the place of the app bitset.
+   */
+  private void benchmarkBitIndex() throws IOException {
+    BitSet union = new BitSet();
+    for (Path file : getLargestLibraries()) {
+      union.or(
+          Utils.makeBitSet(
+              Utils.unionSorted(
+                  IOHelper.getClassData(file)
+                      .stream()
+                      .map(ClassData::getKGramHashArray)
+                      .collect(Collectors.toList())),
+              Constants.M_PRIME));
+    }
+    CompressedBitSet appBitSet = CompressedBitSet.ofBitmaps(union);
+    LongHolder ts = LongHolder.currentTimeMillis();
+    BitIndex bitIndex = IOHelper.getBitIndex();
+    if (bitIndex == null) {
+      throw new IOException("Bit index is not available");
+    }
+    Utils.println("Opened bit index, " + Utils.benchmark(ts));
+    List<String> libraries = bitIndex.getLibraries();
+    Utils.println(
+        libraries.size()
+            + " libraries, "
+            + Utils.toPercent((double) union.cardinality() / Constants.M_PRIME)
+            + " of app BitSet populated");
+    for (int r = 1; r <= rounds; r++) {
+      System.gc();
+      long alloc = getAllocatedBytes();
+      long start = System.nanoTime();
+      int[] kernelHits = new int[libraries.size()];
+      long libBytes = 0L;
+      for (int l = 0; l < libraries.size(); l++) {
+        String libraryPath = IOHelper.toLibraryPath(libraries.get(l));
+        CompressedBitSet libBitSet = IOHelper.BITSET_CACHE.getUnchecked(libraryPath);
+        kernelHits[l] = appBitSet.andCardinality(libBitSet);
+        libBytes += libBitSet.getSizeInBytes();
+      }
+      String kernel =
+          formatResult(System.nanoTime() - start, libBytes, getAllocatedBytes() - alloc);
+
+      System.gc();
+      alloc = getAllocatedBytes();
+      start = System.nanoTime();
+      int[] indexHits = bitIndex.countHits(appBitSet);
+      String index = formatResult(System.nanoTime() - start, libBytes, getAllocatedBytes() - alloc);
+      if (!Arrays.equals(kernelHits, indexHits)) {
+        throw new IllegalStateException("Bit index and library bitsets differ");
+      }
+      Utils.println("Round " + r + ":");
+      Utils.println(
+          "  andCardinality per library: "
+              + kernel
+              + ", "
+              + Utils.toPercent((double) libBytes / libraries.size() / (Constants.M_PRIME / 8))
+              + " of the uncompressed size");
+      Utils.println("  bit index: " + index);
+    }
+  }
+
+  /**
+   * Evaluates folded low-resolution bitsets as a first stage of the BitSet filter. Common bits of
+   * the app and a library may fold into the same bin, so only the sum of the smaller bit count of
+   * each bin bounds the common bits from above. Compares the libraries passing the threshold with
+   * this bound and the time to compute it with the exact intersection of the compressed library
+   * bitsets. The union of the largest libraries takes the place of the app bitset.
+   */
+  private void benchmarkFolding() throws IOException {
+    BitSet union = new BitSet();
+    for (Path file : getLargestLibraries()) {
+      union.or(
+          Utils.makeBitSet(
+              Utils.unionSorted(
+                  IOHelper.getClassData(file)
+                      .stream()
+                      .map(ClassData::getKGramHashArray)
+                      .collect(Collectors.toList())),
+              Constants.M_PRIME));
+    }
+    CompressedBitSet appBitSet = CompressedBitSet.ofBitmaps(union);
+    double appBitSetPop = (double) union.cardinality() / Constants.M_PRIME;
+    List<String> libraries =
+        IOHelper.getLibraryMap().values().stream().distinct().collect(Collectors.toList());
+    List<CompressedBitSet> libBitSets = new ArrayList<>();
+    double[] thresholds = new double[libraries.size()];
+    long libBytes = 0L;
+    for (int l = 0; l < libraries.size(); l++) {
+      libBitSets.add(IOHelper.BITSET_CACHE.getUnchecked(libraries.get(l)));
+      thresholds[l] = Utils.getBitSetThreshold(libBitSets.get(l).cardinality(), appBitSetPop);
+      libBytes += libBitSets.get(l).getSizeInBytes();
+    }
+    Utils.println(
+        libraries.size()
+            + " libraries, "
+            + Utils.toPercent(appBitSetPop)
+            + " of app BitSet populated");
+    // folded bitsets hold the number of bits of each bin, sparse for libraries
+    int[][] appCounts = new int[FOLD_BINS.length][];
+    FoldedBitSet[][] libFolded = new FoldedBitSet[FOLD_BINS.length][libraries.size()];
+    long[] foldBytes = new long[FOLD_BINS.length];
+    for (int f = 0; f < FOLD_BINS.length; f++) {
+      appCounts[f] = FoldedBitSet.fold(appBitSet, FOLD_BINS[f], Constants.M_PRIME);
+      for (int l = 0; l < libraries.size(); l++) {
+        libFolded[f][l] = FoldedBitSet.of(libBitSets.get(l), FOLD_BINS[f], Constants.M_PRIME);
+        foldBytes[f] += libFolded[f][l].getSizeInBytes();
+      }
+    }
+    for (int r = 1; r <= rounds; r++) {
+      Utils.println("Round " + r + ":");
+      long start = System.nanoTime();
+      int passed = 0;
+      for (int l = 0; l < libraries.size(); l++) {
+        CompressedBitSet libBitSet = libBitSets.get(l);
+        if ((double) appBitSet.andCardinality(libBitSet) / libBitSet.cardinality()
+            >= thresholds[l]) {
+          passed++;
+        }
+      }
+      Utils.println(
+          "  exact: "
+              + passed
+              + " passed, "
+              + formatResult(System.nanoTime() - start, libBytes, -1L));
+      for (int f = 0; f < FOLD_BINS.length; f++) {
+        start = System.nanoTime();
+        passed = 0;
+        for (int l = 0; l < libraries.size(); l++) {
+          int bound = libFolded[f][l].getUpperBound(appCounts[f]);
+          if ((double) bound / libBitSets.get(l).cardinality() >= thresholds[l]) {
+            passed++;
+          }
+        }
+        Utils.println(
+            "  "
+                + FOLD_BINS[f]
+                + " bins: "
+                + passed
+                + " passed, "
+                + formatResult(System.nanoTime() - start, foldBytes[f], -1L));
+      }
+    }
+  }
+
+  /**
+   * Compares the {@link ScalarKernels} with the {@link Kernels} in use, which are the Vector API
+   * variants when running the multi-release JAR on Java 17+ with the jdk.incubator.vector module.
+   * The inputs of {@link Utils#andCount} are those of the "bitset" benchmark, the inputs of {@link
+   * Utils#intersectionSize} are the k-gram hashes of all pairs of methods within each class.
+   */
+  private void benchmarkKernels() throws IOException {
+    List<long[]> libWords = new ArrayList<>();
+    List<ClassData> classes = new ArrayList<>();
+    BitSet union = new BitSet();
+    for (Path file : getLargestLibraries()) {
+      List<ClassData> cdList = IOHelper.getClassData(file);
+      classes.addAll(cdList);
+      BitSet bitSet =
+          Utils.makeBitSet(
+              Utils.unionSorted(
+                  cdList.stream().map(ClassData::getKGramHashArray).collect(Collectors.toList())),
+              Constants.M_PRIME);
+      libWords.add(bitSet.toLongArray());
+      union.or(bitSet);
+    }
+    long[] unionWords = union.toLongArray();
+    long libBytes = (long) libWords.size() * unionWords.length * 8L;
+
+    int[][][] methodHashes =
+        classes
+            .stream()
+            .map(cd -> cd.stream().map(MethodData::getKGramHashArray).toArray(int[][]::new))
+            .toArray(int[][][]::new);
+    long methodBytes = 0L;
+    for (int[][] hashes : methodHashes) {
+      for (int[] a : hashes) {
+        for (int[] b : hashes) {
+          methodBytes += 4L * (a.length + b.length);
+        }
+      }
+    }
+
+    classes = classes.subList(0, Math.min(MAX_CLASSES, classes.size()));
+    int n = classes.size();
+    List<long[]> leftWords = new ArrayList<>();
+    List<long[]> rightWords = new ArrayList<>();
+    long classBytes = 0L;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        ClassData ci = classes.get(i);
+        ClassData cj = classes.get(j);
+        if (ci.getHashPrimeIdx() >= 0 && cj.getHashPrimeIdx() >= 0) {
+          int pIdx = Math.max(ci.getHashPrimeIdx(), cj.getHashPrimeIdx());
+          leftWords.add(ci.getBitSets()[pIdx]);
+          rightWords.add(cj.getBitSets()[pIdx]);
+          classBytes += 8L * Math.min(ci.getBitSets()[pIdx].length, cj.getBitSets()[pIdx].length);
+        }
+      }
+    }
+    Utils.println("Kernels in use: " + Kernels.getName());
+
+    for (int r = 1; r <= rounds; r++) {
+      Utils.println("Round " + r + ":");
+      long[] sums = new long[2];
+      for (int k = 0; k < 2; k++) {
+        boolean scalar = k == 0;
+        long ts = System.nanoTime();
+        for (long[] words : libWords) {
+          sums[k] +=
+              scalar
+                  ? ScalarKernels.andCount(unionWords, words)
+                  : Kernels.andCount(unionWords, words);
+        }
+        String lib = formatResult(System.nanoTime() - ts, libBytes, -1L);
+
+        ts = System.nanoTime();
+        for (int i = 0; i < leftWords.size(); i++) {
+          sums[k] +=
+              scalar
+                  ? ScalarKernels.andCount(leftWords.get(i), rightWords.get(i))
+                  : Kernels.andCount(leftWords.get(i), rightWords.get(i));
+        }
+        String cls = formatResult(System.nanoTime() - ts, classBytes, -1L);
+
+        ts = System.nanoTime();
+        for (int[][] hashes : methodHashes) {
+          for (int[] a : hashes) {
+            for (int[] b : hashes) {
+              sums[k] +=
+                  scalar ? ScalarKernels.intersectionSize(a, b) : Kernels.intersectionSize(a, b);
+            }
+          }
+        }
+        String method = formatResult(System.nanoTime() - ts, methodBytes, -1L);
+        Utils.println("  " + (scalar ? "scalar" : Kernels.getName()) + " kernels:");
+        Utils.println("    library andCount: " + lib);
+        Utils.println("    class andCount: " + cls);
+        Utils.println("    method intersectionSize: " + method);
+      }
+      if (sums[0] != sums[1]) {
+        throw new IllegalStateException(
+            "Kernel results differ: " + sums[0] + " (scalar) != " + sums[1]);
+      }
+      checksum += sums[1];
+    }
+  }
+
+  /**
+   * Compares the dense {@link MWBMatchingAlgorithm} with the {@link SparseMatchingAlgorithm} on the
+   * initial class matchings of each of the largest libraries against the next one, which are
+   * usually versions of the same library.
+   */
+  private void benchmarkMatching() throws IOException {
+    List<List<ClassData>> libraries = new ArrayList<>();
+    for (Path file : getLargestLibraries()) {
+      libraries.add(IOHelper.getClassData(file));
+    }
+    List<double[][]> weights = new ArrayList<>();
+    for (int l = 0; l + 1 < libraries.size(); l++) {
+      List<ClassData> libClasses = libraries.get(l);
+      List<ClassData> appClasses = libraries.get(l + 1);
+      MatchingWrapper<ClassData, ClassData> cm =
+          new MatchingWrapper<>(
+              libClasses,
+              appClasses,
+              (lc, ac) -> new ApproxMethodMatching(lc, ac).getClassSimilarity());
+      double[][] w = cm.getWeights();
+      for (double[] row : w) {
+        for (int j = 0; j < row.length; j++) {
+          row[j] = row[j] == 0. ? Double.NEGATIVE_INFINITY : 1. + row[j];
+        }
+      }
+      weights.add(w);
+      Utils.println(
+          "Matrix "
+              + (l + 1)
+              + ": "
+              + libClasses.size()
+              + " x "
+              + appClasses.size()
+              + ", density "
+              + Utils.toPercent(cm.getDensity()));
+    }
+
+    double sparseDensity = Constants.SPARSE_MATCHING_DENSITY;
+    try {
+      for (int r = 1; r <= rounds; r++) {
+        Utils.println("Round " + r + ":");
+        for (int l = 0; l < weights.size(); l++) {
+          double[][] w = weights.get(l);
+          List<ClassData> rows = libraries.get(l);
+          List<ClassData> cols = libraries.get(l + 1);
+          double[] sums = new double[2];
+          long[] nanos = new long[2];
+          for (int k = 0; k < 2; k++) {
+            Constants.SPARSE_MATCHING_DENSITY = k == 0 ? -1. : 1.;
+            long ts = System.nanoTime();
+            MatchingWrapper<ClassData, ClassData> cm = new MatchingWrapper<>(rows, cols, w);
+            List<Integer> matching = cm.getMatching();
+            nanos[k] = System.nanoTime() - ts;
+            for (int i = 0; i < matching.size(); i++) {
+              if (matching.get(i) >= 0) {
+                sums[k] += w[i][matching.get(i)];
+              }
+            }
+          }
+          if (Math.abs(sums[0] - sums[1]) > 1e-6) {
+            throw new IllegalStateException(
+                "Matching weights differ: " + sums[0] + " (dense) != " + sums[1]);
+          }
+          checksum += (long) sums[1];
+          Utils.println(
+              String.format(
+                  Locale.ROOT,
+                  "  Matrix %d: dense %.1f ms, sparse %.1f ms",
+                  l + 1,
+                  nanos[0] / 1e6,
+                  nanos[1] / 1e6));
+        }
+      }
+    } finally {
+      Constants.SPARSE_MATCHING_DENSITY = sparseDensity;
+    }
+  }
+
+  private void benchmarkCodecs(List<byte[]> data) throws IOException {
+    long rawSize = data.stream().mapToLong(b -> b.length).sum();
+    Path tmpDir = Files.createTempDirectory("ordol-codecs");
+    try {
+      for (Codec codec : Codecs.ALL) {
+        long encodeNanos = 0L;
+        long encodedSize = 0L;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+          Path path = tmpDir.resolve(i + codec.getExtension());
+          long ts = System.nanoTime();
+          byte[] encoded = codec.encode(data.get(i));
+          encodeNanos += System.nanoTime() - ts;
+          encodedSize += encoded.length;
+          Files.write(path, encoded);
+          paths.add(path);
+        }
+        long decodeNanos = 0L;
+        long decodeAlloc = 0L;
+        for (int r = 1; r <= rounds; r++) {
+          System.gc();
+          long alloc = getAllocatedBytes();
+          long ts = System.nanoTime();
+          for (int i = 0; i < paths.size(); i++) {
+            ByteBuffer decoded = codec.read(paths.get(i));
+            for (int p = 0; p + 8 <= decoded.limit(); p += 8) {
+              checksum += decoded.getLong(p);
+            }
+            if (r == 1 && !decoded.equals(ByteBuffer.wrap(data.get(i)))) {
+              throw new IllegalStateException(codec.getName() + " round trip failed");
+            }
+          }
+          decodeNanos = System.nanoTime() - ts;
+          decodeAlloc = getAllocatedBytes() - alloc;
+        }
+        Utils.println(
+            String.format(
+                Locale.ROOT,
+                "%-10s %8.1f MB (%5.1f%%), encode %s, decode %s",
+                codec.getName(),
+                encodedSize / 1048576.,
+                100. * encodedSize / rawSize,
+                formatResult(encodeNanos, rawSize, -1L),
+                formatResult(decodeNanos, rawSize, decodeAlloc)));
+        for (Path path : paths) {
+          Files.delete(path);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(tmpDir);
+    }
+  }
+
+  /** @return The decoded content of the given JSON signature */
+  private static ByteBuffer decode(Path file) throws IOException {
+    Codec codec = Codecs.forPath(file, IOHelper.JSON_EXT);
+    if (codec == null) {
+      throw new IOException("Not a JSON signature: " + file);
+    }
+    return codec.read(file);
+  }
+
+  private static String formatResult(long nanos, long bytes, long alloc) {
+    double ms = nanos / 1e6;
+    String result =
+        String.format(Locale.ROOT, "%.1f ms, %.1f MB/s", ms, bytes / 1048576. / (ms / 1000.));
+    if (alloc >= 0) {
+      result += String.format(Locale.ROOT, ", %.1f MB allocated", alloc / 1048576.);
+    }
+    return result;
+  }
+
+  /** @return The bytes allocated by the current thread so far, or -1 if not supported */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1L;
+  }
+}
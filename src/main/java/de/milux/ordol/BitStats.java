@@ -41,22 +41,19 @@ public class BitStats implements CLIDispatcher {
     Map<String, BitSet> libBitmaps = new HashMap<>();
     short[] bitFrequencies = new short[M_PRIME];
 
-    // collect common (AND) bits for all versions of each library
+    // collect common (AND) bits for all versions of each library, cached with the library family
     IOHelper.getLibraryMap()
+        .keySet()
+        .stream()
+        .map(IOHelper::getFamilyName)
+        .distinct()
         .forEach(
-            (fullLibName, libPath) -> {
+            libName -> {
               try {
-                String[] splitName = fullLibName.split(" ");
-                String libName = splitName[0];
-                BitSet lh = IOHelper.BITSET_CACHE.get(libPath).bitSet;
-                if (libBitmaps.containsKey(libName)) {
-                  libBitmaps.get(libName).and(lh);
-                } else {
-                  libBitmaps.put(libName, (BitSet) lh.clone());
-                }
-                Utils.println("Processed " + fullLibName);
+                libBitmaps.put(libName, IOHelper.FAMILY_CACHE.get(libName).intersection.toBitSet());
+                Utils.println("Processed " + libName);
               } catch (Exception e) {
-                System.err.println("Could not read " + fullLibName + " (" + libPath + ")");
+                System.err.println("Could not read " + libName);
                 e.printStackTrace();
               }
             });
@@ -38,6 +38,9 @@ public class CLI {
   private static final String ANALYZER_CMD = "analyze";
   private static final String STATS_CMD = "stats";
   private static final String MAPPER_ALL = "processAll";
+  private static final String CONVERT_CMD = "convert";
+  private static final String PACK_CMD = "pack";
+  private static final String BENCH_CMD = "bench";
   private static volatile boolean keepRunning = true;
   private static volatile boolean hasShutdownHook = false;
   private static Thread shutdownHook = null;
@@ -71,6 +74,12 @@ public class CLI {
       cliDispatcher = new AppAnalyzer();
     } else if (STATS_CMD.equals(args[0])) {
       cliDispatcher = new BitStats();
+    } else if (CONVERT_CMD.equals(args[0])) {
+      cliDispatcher = new SignatureConverter();
+    } else if (PACK_CMD.equals(args[0])) {
+      cliDispatcher = new CorpusPacker();
+    } else if (BENCH_CMD.equals(args[0])) {
+      cliDispatcher = new Benchmarks();
     } else if (MAPPER_ALL.equals(args[0])) {
       cliDispatcher =
           new LibraryMapper() {
@@ -105,6 +114,12 @@ public class CLI {
               + ANALYZER_CMD
               + "|"
               + STATS_CMD
+              + "|"
+              + CONVERT_CMD
+              + "|"
+              + PACK_CMD
+              + "|"
+              + BENCH_CMD
               + " [-h] [OPTIONS...]");
       return;
     }
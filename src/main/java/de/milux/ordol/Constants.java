@@ -18,6 +18,8 @@
  */
 package de.milux.ordol;
 
+import de.milux.ordol.binary.Codec;
+import de.milux.ordol.binary.Codecs;
 import io.vavr.collection.List;
 
 import java.nio.file.FileSystem;
@@ -34,8 +36,21 @@ public final class Constants {
   public static Path ANDROID_JAR =
       ANDROID_PLATFORMS.resolve(FS.getPath("android-23", "android.jar"));
   public static Path LIBS_DIRECTORY = FS.getPath("ordol_libs");
+  /** Single file containing all library signatures, used instead of LIBS_DIRECTORY if present */
+  public static Path CORPUS_PACK_PATH = LIBS_DIRECTORY.resolve("corpus.pack");
+  /**
+   * Use the corpus pack if present. The pack is trusted without checking the library directory, it
+   * is deleted whenever the LibraryMapper writes a library.
+   */
+  public static boolean USE_CORPUS_PACK = true;
   public static Path BITSET_CACHE_PATH =
       FS.getPath(System.getProperty("java.io.tmpdir"), "LibDetector");
+  /** Codec of the JSON library signatures written by the LibraryMapper */
+  public static Codec LIBRARY_CODEC = Codecs.DEFLATE_BEST;
+  /** Codec of the library bitsets in the bitset cache */
+  public static Codec BITSET_CODEC = Codecs.LZ;
+  /** Cache of the ClassData extracted from analyzed apps, keyed by APK hash and settings */
+  public static Path APP_CACHE_PATH = BITSET_CACHE_PATH.resolve("apps");
   /** Path to javac compiler for compilation of source files */
   public static String JAVAC_EXEC = "javac";
   /**
@@ -47,6 +62,26 @@ public final class Constants {
   public static int NUM_THREADS = Runtime.getRuntime().availableProcessors();
   /** Threshold for a library to be scanned for in the analyzed application. */
   public static String BITSET_THRESHOLD = "max(0.1 + appBsPop, 0.9 - 0.2 * log10(max(1, size)))";
+  /**
+   * Test the upper bound of the common bits from the folded BitSets before intersecting the app
+   * BitSet with a library BitSet, for libraries missing from the bit index
+   */
+  public static boolean FOLDED_PREFILTER = false;
+  /** Number of bins of the folded BitSets */
+  public static int FOLD_BINS = 1 << 16;
+  /** Use MinHash sketches with LSH instead of bitsets to select candidate libraries */
+  public static boolean MINHASH_PREFILTER = false;
+  /** Number of hash functions of the MinHash sketches */
+  public static int MINHASH_SIZE = 128;
+  /**
+   * Rows per LSH band, the app is much larger than a library, so app and library have a low
+   * Jaccard similarity even if the library is fully contained, which requires very short bands.
+   * With single-row bands, most libraries share a minimum with a large app, so the LSH lookup is
+   * hardly sub-linear and the selection relies on the containment estimate of each hit. Longer
+   * bands would drop fully contained libraries whose Jaccard similarity with the app is only a few
+   * percent.
+   */
+  public static int LSH_ROWS = 1;
   /** Range from the best result (bit hashes) downwards to be examined in one round */
   public static double SCAN_RANGE = .03;
   /** Threshold for a library to be considered as contained in the analyzed application. */
@@ -63,6 +98,11 @@ public final class Constants {
    * lower value than this threshold will be set to 0.
    */
   public static double SIMILARITY_CUTOFF_THRESHOLD = .1;
+  /**
+   * Maximum fraction of non-zero similarities for which the MatchingWrapper uses the sparse
+   * matching algorithm instead of the dense Hungarian algorithm
+   */
+  public static double SPARSE_MATCHING_DENSITY = .25;
   /**
    * The influence of the assumed calls of a method for the method matching in a matched class pair
    * Value 0 means the assumed calls aren't used for optimization at all. Only the similarity of the
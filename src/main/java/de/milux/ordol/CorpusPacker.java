@@ -0,0 +1,111 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import de.milux.ordol.binary.CorpusPack;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.helpers.CLIDispatcher;
+import de.milux.ordol.helpers.IOHelper;
+import de.milux.ordol.helpers.LongHolder;
+import de.milux.ordol.helpers.Utils;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/**
+ * Packs the signatures of all libraries in the library directory into a single corpus pack file,
+ * see {@link CorpusPack}.
+ */
+public class CorpusPacker implements CLIDispatcher {
+
+  @Override
+  public Options getOptions() {
+    return new Options()
+        .addOption(
+            Option.builder("o")
+                .longOpt("output")
+                .hasArg()
+                .argName("path")
+                .desc("The path of the pack file, default: " + Constants.CORPUS_PACK_PATH)
+                .build());
+  }
+
+  @Override
+  public void dispatch(CommandLine cmd, Options options) {
+    Path packPath =
+        cmd.hasOption("o")
+            ? Constants.FS.getPath(cmd.getOptionValue("o"))
+            : Constants.CORPUS_PACK_PATH;
+    LongHolder ts = LongHolder.currentTimeMillis();
+    // always scan the directory, an existing pack must not be the source of a new one
+    Map<String, String> libMap = IOHelper.scanLibraryDirectory();
+    // decode signatures in parallel, but write them in order with a bounded look-ahead
+    Deque<Future<List<ClassData>>> pending = new ArrayDeque<>();
+    Deque<Map.Entry<String, String>> pendingEntries = new ArrayDeque<>();
+    CorpusPack.Writer writer = new CorpusPack.Writer(packPath);
+    try (CorpusPack.Writer w = writer) {
+      for (Map.Entry<String, String> e : libMap.entrySet()) {
+        pending.add(Utils.submitCallable(() -> IOHelper.getFileClassData(e.getValue())));
+        pendingEntries.add(e);
+        if (pending.size() >= 2 * Constants.NUM_THREADS) {
+          writeNext(w, pending, pendingEntries);
+        }
+      }
+      while (!pending.isEmpty()) {
+        writeNext(w, pending, pendingEntries);
+      }
+      // only reached if all libraries were read, otherwise the existing pack is kept
+      w.finish();
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+    Utils.println(
+        "Packed "
+            + libMap.size()
+            + " libraries with "
+            + writer.getClassCount()
+            + " distinct of "
+            + writer.getTotalClassCount()
+            + " classes to "
+            + packPath
+            + ", "
+            + Utils.benchmark(ts));
+  }
+
+  private static void writeNext(
+      CorpusPack.Writer writer,
+      Deque<Future<List<ClassData>>> pending,
+      Deque<Map.Entry<String, String>> pendingEntries)
+      throws IOException {
+    Map.Entry<String, String> e = pendingEntries.poll();
+    try {
+      writer.add(IOHelper.toPackKey(e.getValue()), e.getKey(), pending.poll().get());
+    } catch (InterruptedException | ExecutionException x) {
+      throw new IOException("Could not read signature of " + e.getKey(), x);
+    }
+  }
+}
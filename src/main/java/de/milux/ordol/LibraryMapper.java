@@ -18,8 +18,13 @@
  */
 package de.milux.ordol;
 
+import de.milux.ordol.binary.Codec;
+import de.milux.ordol.binary.Codecs;
+import de.milux.ordol.binary.SignatureFormat;
+import de.milux.ordol.binary.SignatureWriter;
 import de.milux.ordol.data.ClassData;
 import de.milux.ordol.helpers.CLIDispatcher;
+import de.milux.ordol.helpers.CLIHelper;
 import de.milux.ordol.helpers.ClassBuilder;
 import de.milux.ordol.helpers.IOHelper;
 import de.milux.ordol.helpers.Utils;
@@ -45,8 +50,6 @@ import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -165,6 +168,17 @@ public class LibraryMapper implements CLIDispatcher {
                 .hasArg()
                 .argName("path")
                 .desc("The path of the javac executable to call for Java compilation.")
+                .build())
+        .addOption(
+            Option.builder("c")
+                .longOpt("codec")
+                .hasArg()
+                .argName("codec")
+                .desc(
+                    "The codec of the written JSON signatures, one of "
+                        + Codecs.getNames()
+                        + ", default: "
+                        + Constants.LIBRARY_CODEC.getName())
                 .build());
   }
 
@@ -172,6 +186,7 @@ public class LibraryMapper implements CLIDispatcher {
   public void dispatch(CommandLine cmd, Options options)
       throws ParseException {
     Mode m = Mode.valueOf(cmd.getOptionValue("m"));
+    Constants.LIBRARY_CODEC = CLIHelper.validateCodec(cmd, "c", Constants.LIBRARY_CODEC);
     Path libDir = Constants.FS.getPath(cmd.getOptionValue("ld"));
     // allowed to be null
     String name = cmd.getOptionValue("n");
@@ -720,7 +735,9 @@ public class LibraryMapper implements CLIDispatcher {
     }
 
     Path apkPath = Constants.LIBS_DIRECTORY.resolve(name + ".apk");
-    Path jsonPath = Constants.LIBS_DIRECTORY.resolve(name + ".json.zlib");
+    // the JSON signature may have been written with another codec
+    Path jsonPath = IOHelper.getJsonPath(Constants.LIBS_DIRECTORY.resolve(name).toString());
+    Path sigPath = Constants.LIBS_DIRECTORY.resolve(name + SignatureFormat.EXT);
 
     if (Files.notExists(apkPath)) {
       Path binPath = binPathSupplier.get();
@@ -734,8 +751,9 @@ public class LibraryMapper implements CLIDispatcher {
       }
       // make APK from library, try up to five times if necessary
       makeApk(binPath, apkPath);
-      // if APK is rebuilt, remove the old JSON file, too
+      // if APK is rebuilt, remove the old JSON and binary signature files, too
       Try.run(() -> Files.deleteIfExists(jsonPath));
+      Try.run(() -> Files.deleteIfExists(sigPath));
     } else if (Files.exists(jsonPath) && Files.size(jsonPath) > 0) {
       Utils.syncPrint(name + " is already indexed");
       return;
@@ -766,9 +784,10 @@ public class LibraryMapper implements CLIDispatcher {
                 .collect(Collectors.toList());
       }
       Utils.syncPrint("Collect hash values: " + name);
-      Set<Integer> hashes = new HashSet<>();
-      cdList.forEach(cd -> cd.forEach(md -> hashes.addAll(md.getKGramHashes())));
-      if (hashes.isEmpty()) {
+      int[] hashes =
+          Utils.unionSorted(
+              cdList.stream().map(ClassData::getKGramHashArray).collect(Collectors.toList()));
+      if (hashes.length == 0) {
         Utils.syncPrint("Skip " + name + " because it does not contain any code!");
         return;
       }
@@ -778,18 +797,23 @@ public class LibraryMapper implements CLIDispatcher {
               + " and library "
               + name
               + ": "
-              + Utils.toPercent((double) hashes.size() / (double) Constants.M_PRIME));
+              + Utils.toPercent((double) hashes.length / (double) Constants.M_PRIME));
       Path parent = jsonPath.getParent();
       Files.createDirectories(parent);
       if (Files.notExists(jsonPath) || Files.size(jsonPath) == 0) {
-        try (Writer w =
-            new OutputStreamWriter(
-                new DeflaterOutputStream(
-                    Files.newOutputStream(jsonPath), new Deflater(Deflater.BEST_COMPRESSION)),
-                    StandardCharsets.UTF_8)) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (Writer w = new OutputStreamWriter(json, StandardCharsets.UTF_8)) {
           Utils.getGson().toJson(cdList, w);
-          this.libDirectories.add(parent.getFileName().toString());
         }
+        Files.deleteIfExists(jsonPath);
+        IOHelper.invalidateCorpusPack();
+        Constants.LIBRARY_CODEC.write(
+            Constants.LIBS_DIRECTORY.resolve(
+                name + IOHelper.JSON_EXT + Constants.LIBRARY_CODEC.getExtension()),
+            json.toByteArray());
+        this.libDirectories.add(parent.getFileName().toString());
+        // write the memory-mappable binary signature alongside the JSON file
+        SignatureWriter.write(cdList, sigPath);
       }
       Utils.syncPrint("Finished processing " + name);
     }
@@ -811,7 +835,6 @@ public class LibraryMapper implements CLIDispatcher {
   }
 
   public void indexDuplicates() {
-    Pattern versionAndExt = Pattern.compile("(.*)\\.json\\.zlib$");
     libDirectories
         .stream()
         .map(Constants.LIBS_DIRECTORY::resolve)
@@ -824,11 +847,14 @@ public class LibraryMapper implements CLIDispatcher {
                           .filter(Files::isRegularFile)
                           .forEach(
                               path -> {
-                                Matcher fileMatcher =
-                                    versionAndExt.matcher(path.getFileName().toString());
-                                if (fileMatcher.matches()) {
-                                  String name = fileMatcher.group(1);
-                                  String hash = IOHelper.getSHA256(path);
+                                String name =
+                                    Codecs.stripExtension(
+                                        path.getFileName().toString(), IOHelper.JSON_EXT);
+                                Codec codec = Codecs.forPath(path, IOHelper.JSON_EXT);
+                                if (name != null) {
+                                  // hash the decoded signature, independent of its codec
+                                  String hash =
+                                      IOHelper.getSHA256(Try.of(() -> codec.read(path)).get());
                                   if (hashToFiles.containsKey(hash)) {
                                     hashToFiles.get(hash).add(name);
                                   } else {
@@ -838,6 +864,7 @@ public class LibraryMapper implements CLIDispatcher {
                                   }
                                 }
                               }));
+              IOHelper.invalidateCorpusPack();
               try (Writer w =
                   Files.newBufferedWriter(d.resolve("index.json"), Charset.forName("UTF-8"))) {
                 Utils.getGson().toJson(hashToFiles, w);
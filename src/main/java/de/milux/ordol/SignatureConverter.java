@@ -0,0 +1,93 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import de.milux.ordol.binary.Codecs;
+import de.milux.ordol.binary.SignatureFormat;
+import de.milux.ordol.binary.SignatureWriter;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.helpers.CLIDispatcher;
+import de.milux.ordol.helpers.IOHelper;
+import de.milux.ordol.helpers.Utils;
+import io.vavr.control.Try;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/** Converts all compressed JSON library signatures to the binary signature format */
+public class SignatureConverter implements CLIDispatcher {
+  @Override
+  public Options getOptions() {
+    return new Options()
+        .addOption(
+            Option.builder("f")
+                .longOpt("force")
+                .desc("Convert all signatures, even if there is already a binary signature.")
+                .build());
+  }
+
+  @Override
+  public void dispatch(CommandLine cmd, Options options) {
+    boolean force = cmd.hasOption("f");
+    AtomicInteger converted = new AtomicInteger(0);
+    AtomicLong jsonBytes = new AtomicLong(0L);
+    AtomicLong sigBytes = new AtomicLong(0L);
+    IOHelper.visitAllFiles(
+        Constants.LIBS_DIRECTORY,
+        file -> {
+          String libraryPath = Codecs.stripExtension(file.toString(), IOHelper.JSON_EXT);
+          if (libraryPath == null) {
+            return;
+          }
+          Path sigPath = Constants.FS.getPath(libraryPath + SignatureFormat.EXT);
+          if (!force && Files.exists(sigPath)) {
+            return;
+          }
+          Utils.submitTask(
+              () ->
+                  Try.run(
+                          () -> {
+                            List<ClassData> cdList = IOHelper.getClassData(file);
+                            SignatureWriter.write(cdList, sigPath);
+                            jsonBytes.addAndGet(Files.size(file));
+                            sigBytes.addAndGet(Files.size(sigPath));
+                            converted.incrementAndGet();
+                          })
+                      .onFailure(
+                          t -> {
+                            System.err.println("Could not convert " + file);
+                            t.printStackTrace();
+                          }));
+        });
+    Utils.waitForTasks();
+    Utils.println(
+        "Converted "
+            + converted.get()
+            + " signatures ("
+            + jsonBytes.get()
+            + " bytes compressed JSON, "
+            + sigBytes.get()
+            + " bytes binary)");
+  }
+}
@@ -18,6 +18,7 @@
  */
 package de.milux.ordol.algo;
 
+import de.milux.ordol.Constants;
 import de.milux.ordol.helpers.CustomCollectors;
 import de.milux.ordol.helpers.IndexedList;
 import de.milux.ordol.helpers.Utils;
@@ -25,63 +26,247 @@ import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
+/**
+ * Maximum-weight matching of the elements of two lists, weighted by a similarity function. Only
+ * the pairs with a positive matching weight are kept as edges (as compressed sparse rows). Each
+ * connected component of the resulting graph is matched on its own, by the {@link
+ * SparseMatchingAlgorithm} if at most {@link Constants#SPARSE_MATCHING_DENSITY} of its pairs have
+ * an edge, and by the dense {@link MWBMatchingAlgorithm} otherwise.
+ */
 public class MatchingWrapper<R, C> {
+  /** Minimum number of edges of a connected component to be matched in parallel */
+  private static final int PARALLEL_EDGES = 10_000;
+
   private List<R> rowList;
   private List<C> colList;
-  private MWBMatchingAlgorithm mwbm;
   private List<Integer> matching;
-  private double[][] weights;
+  // the edges of row i are rowStart[i] until rowStart[i + 1] (exclusive), with ascending cols
+  private int[] rowStart;
+  private int[] cols;
+  private double[] sims;
+  private double[] algoWeights;
+  private int edgeCount = 0;
+  // the similarities of pairs without an edge (by row * columns + column), if not zero
+  private final Map<Long, Double> prunedSims = new HashMap<>();
+  // the weights given as dense matrix, if any
+  private double[][] denseWeights;
+  // the matching of the previous round, whose unchanged components are reused
+  private MatchingWrapper<R, C> previous;
 
   public MatchingWrapper(List<R> rowList, List<C> colList, BiFunction<R, C, Double> simFunc) {
     this(
         rowList,
         colList,
         simFunc,
-        sim -> {
-          if (sim < 0. || sim > 1.) {
-            throw new IllegalArgumentException(
-                "Similarity Function must return values in range [0.0; 1.0], encountered " + sim);
-          }
-          return sim == 0. ? Double.NEGATIVE_INFINITY : 1. + sim;
-        });
+        MatchingWrapper::toAlgoWeight,
+        (Function<R, int[]>) null,
+        false);
   }
 
+  /**
+   * @param algoMapper Maps a similarity to the weight used for the matching, pairs mapped to
+   *     Double.NEGATIVE_INFINITY (or any other weight that is not positive) are never matched
+   */
   public MatchingWrapper(
       List<R> rowList,
       List<C> colList,
       BiFunction<R, C, Double> simFunc,
       Function<Double, Double> algoMapper) {
-    this.rowList = rowList;
-    this.colList = colList;
-    mwbm = new MWBMatchingAlgorithm(rowList.size(), colList.size());
-    weights = new double[rowList.size()][colList.size()];
+    this(rowList, colList, simFunc, algoMapper, (Function<R, int[]>) null, false);
+  }
+
+  /**
+   * @param candidates Returns the ascending indices of the columns that may have a non-zero
+   *     similarity to a row, the similarity function is not applied to the other columns
+   * @param parallel Whether to calculate the similarities of the rows in parallel, for large
+   *     matrices with expensive similarity functions
+   */
+  public MatchingWrapper(
+      List<R> rowList,
+      List<C> colList,
+      BiFunction<R, C, Double> simFunc,
+      Function<R, int[]> candidates,
+      boolean parallel) {
+    this(rowList, colList, simFunc, MatchingWrapper::toAlgoWeight, candidates, parallel);
+  }
+
+  /**
+   * Creates a matching of the same rows and columns as a previous matching, e.g. in the next round
+   * of an iterative refinement. Connected components whose edges and weights did not change keep
+   * their matching from the previous round instead of being matched again.
+   *
+   * @param candidates Returns the ascending indices of the columns that may have a non-zero
+   *     similarity to a row
+   * @param parallel Whether to calculate the similarities of the rows in parallel
+   */
+  public MatchingWrapper(
+      List<R> rowList,
+      List<C> colList,
+      BiFunction<R, C, Double> simFunc,
+      Function<R, int[]> candidates,
+      MatchingWrapper<R, C> previous,
+      boolean parallel) {
+    this(rowList, colList, simFunc, candidates, parallel);
+    if (previous.rowList.size() == rowList.size() && previous.colList.size() == colList.size()) {
+      this.previous = previous;
+    }
+  }
+
+  private MatchingWrapper(
+      List<R> rowList,
+      List<C> colList,
+      BiFunction<R, C, Double> simFunc,
+      Function<Double, Double> algoMapper,
+      Function<R, int[]> candidates,
+      boolean parallel) {
+    this(rowList, colList);
+    if (parallel && rowList.size() > 1) {
+      fillParallel(simFunc, algoMapper, candidates);
+      return;
+    }
+    int[] allCols = IntStream.range(0, colList.size()).toArray();
     IndexedList.of(rowList)
         .forEach(
             (i, re) -> {
-              double[] row = new double[colList.size()];
-              IndexedList.of(colList)
-                  .forEach(
-                      (j, ce) -> {
-                        final double sim = simFunc.apply(re, ce);
-                        row[j] = sim;
-                        mwbm.setWeight(i, j, algoMapper.apply(sim));
-                      });
-              weights[i] = row;
+              for (int j : candidates != null ? candidates.apply(re) : allCols) {
+                final double sim = simFunc.apply(re, colList.get(j));
+                addEdge(i, j, sim, algoMapper.apply(sim));
+              }
+              rowStart[i + 1] = edgeCount;
             });
   }
 
+  /**
+   * @param weights The weights used for the matching, pairs of weight Double.NEGATIVE_INFINITY (or
+   *     any other weight that is not positive) are never matched
+   */
   public MatchingWrapper(List<R> rowList, List<C> colList, double[][] weights) {
+    this(rowList, colList);
+    this.denseWeights = weights;
+    for (int i = 0; i < weights.length; i++) {
+      for (int j = 0; j < weights[i].length; j++) {
+        addEdge(i, j, weights[i][j], weights[i][j]);
+      }
+      rowStart[i + 1] = edgeCount;
+    }
+  }
+
+  private MatchingWrapper(List<R> rowList, List<C> colList) {
     this.rowList = rowList;
     this.colList = colList;
-    mwbm = new MWBMatchingAlgorithm(weights);
-    this.weights = weights;
+    rowStart = new int[rowList.size() + 1];
+    cols = new int[Math.max(rowList.size(), 16)];
+    sims = new double[cols.length];
+    algoWeights = new double[cols.length];
+  }
+
+  private static double toAlgoWeight(double sim) {
+    if (sim < 0. || sim > 1.) {
+      throw new IllegalArgumentException(
+          "Similarity Function must return values in range [0.0; 1.0], encountered " + sim);
+    }
+    return sim == 0. ? Double.NEGATIVE_INFINITY : 1. + sim;
+  }
+
+  /**
+   * Calculates the edges of all rows in parallel, bounded by {@link Constants#NUM_THREADS}, and
+   * appends them in order of the rows.
+   */
+  private void fillParallel(
+      BiFunction<R, C, Double> simFunc,
+      Function<Double, Double> algoMapper,
+      Function<R, int[]> candidates) {
+    int n = rowList.size();
+    int m = colList.size();
+    int[] allCols = IntStream.range(0, m).toArray();
+    int[][] rowCols = new int[n][];
+    double[][] rowSims = new double[n][];
+    double[][] rowWeights = new double[n][];
+    // per-thread buffers for the edges of the current row
+    ThreadLocal<int[]> colBuffers = ThreadLocal.withInitial(() -> new int[m]);
+    ThreadLocal<double[][]> buffers = ThreadLocal.withInitial(() -> new double[2][m]);
+    Utils.invokeParallel(
+        () ->
+            IntStream.range(0, n)
+                .parallel()
+                .forEach(
+                    i -> {
+                      R re = rowList.get(i);
+                      double[][] buffer = buffers.get();
+                      int[] js = colBuffers.get();
+                      int count = 0;
+                      for (int j : candidates != null ? candidates.apply(re) : allCols) {
+                        double sim = simFunc.apply(re, colList.get(j));
+                        double algoWeight = algoMapper.apply(sim);
+                        if (algoWeight > 0. || sim != 0.) {
+                          js[count] = j;
+                          buffer[0][count] = sim;
+                          buffer[1][count++] = algoWeight;
+                        }
+                      }
+                      rowCols[i] = Arrays.copyOf(js, count);
+                      rowSims[i] = Arrays.copyOf(buffer[0], count);
+                      rowWeights[i] = Arrays.copyOf(buffer[1], count);
+                    }));
+    for (int i = 0; i < n; i++) {
+      for (int k = 0; k < rowCols[i].length; k++) {
+        addEdge(i, rowCols[i][k], rowSims[i][k], rowWeights[i][k]);
+      }
+      rowStart[i + 1] = edgeCount;
+    }
+  }
+
+  /**
+   * Appends an edge to the current row i, unless the weight excludes the pair from the matching.
+   * Only positive weights become edges, so all matching algorithms (and the greedy matching of
+   * single rows and columns) agree on which pairs may be matched.
+   */
+  private void addEdge(int i, int j, double sim, double algoWeight) {
+    if (!(algoWeight > 0.)) {
+      if (sim != 0. && denseWeights == null) {
+        prunedSims.put((long) i * colList.size() + j, sim);
+      }
+      return;
+    }
+    if (edgeCount == cols.length) {
+      cols = Arrays.copyOf(cols, edgeCount * 2);
+      sims = Arrays.copyOf(sims, edgeCount * 2);
+      algoWeights = Arrays.copyOf(algoWeights, edgeCount * 2);
+    }
+    cols[edgeCount] = j;
+    sims[edgeCount] = sim;
+    algoWeights[edgeCount] = algoWeight;
+    edgeCount++;
   }
 
+  /**
+   * @return The similarities as dense matrix, zero for all pairs whose similarity has not been
+   *     calculated
+   */
   public double[][] getWeights() {
+    if (denseWeights != null) {
+      return denseWeights;
+    }
+    double[][] weights = new double[rowList.size()][colList.size()];
+    prunedSims.forEach(
+        (cell, sim) ->
+            weights[(int) (cell / colList.size())][(int) (cell % colList.size())] = sim);
+    for (int i = 0; i < rowList.size(); i++) {
+      for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+        weights[i][cols[e]] = sims[e];
+      }
+    }
     return weights;
   }
 
+  /** @return The fraction of all pairs with an edge */
+  public double getDensity() {
+    long cells = (long) rowList.size() * colList.size();
+    return cells == 0 ? 0. : (double) edgeCount / cells;
+  }
+
   public List<R> getUnmatched() {
     ArrayList<R> unmatched = new ArrayList<>();
     IndexedList.of(getMatching())
@@ -97,13 +282,281 @@ public class MatchingWrapper<R, C> {
   public List<Integer> getMatching() {
     if (matching == null) {
       matching =
-          Arrays.stream(mwbm.getMatching()).boxed().collect(CustomCollectors.toCompactROList());
+          Arrays.stream(calcMatching()).boxed().collect(CustomCollectors.toCompactROList());
     }
     return matching;
   }
 
+  /**
+   * Splits the graph into its connected components and matches each component independently. The
+   * components of a single row or column are matched greedily, large components in parallel.
+   *
+   * @return The matched column of each row, -1 for unmatched rows
+   */
+  private int[] calcMatching() {
+    int n = rowList.size();
+    int m = colList.size();
+    int[] result = new int[n];
+    Arrays.fill(result, -1);
+    // union-find over rows (0..n-1) and columns (n..n+m-1)
+    int[] parent = new int[n + m];
+    for (int v = 0; v < n + m; v++) {
+      parent[v] = v;
+    }
+    for (int i = 0; i < n; i++) {
+      for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+        int ri = find(parent, i);
+        int rj = find(parent, n + cols[e]);
+        if (ri != rj) {
+          parent[ri] = rj;
+        }
+      }
+    }
+    // number the components with at least one edge, and bucket their rows and columns in order
+    int[] compOf = new int[n + m];
+    Arrays.fill(compOf, -1);
+    int numComps = 0;
+    for (int i = 0; i < n; i++) {
+      if (rowStart[i] < rowStart[i + 1]) {
+        int root = find(parent, i);
+        if (compOf[root] < 0) {
+          compOf[root] = numComps++;
+        }
+      }
+    }
+    int[] compRowStart = new int[numComps + 1];
+    int[] compColStart = new int[numComps + 1];
+    int[] compEdges = new int[numComps];
+    int[] nodeComp = new int[n + m];
+    for (int v = 0; v < n + m; v++) {
+      nodeComp[v] = compOf[find(parent, v)];
+      if (nodeComp[v] >= 0) {
+        if (v < n) {
+          compRowStart[nodeComp[v] + 1]++;
+          compEdges[nodeComp[v]] += rowStart[v + 1] - rowStart[v];
+        } else {
+          compColStart[nodeComp[v] + 1]++;
+        }
+      }
+    }
+    for (int c = 0; c < numComps; c++) {
+      compRowStart[c + 1] += compRowStart[c];
+      compColStart[c + 1] += compColStart[c];
+    }
+    int[] compRows = new int[compRowStart[numComps]];
+    int[] compCols = new int[compColStart[numComps]];
+    // the index of each column within its component
+    int[] localCol = new int[m];
+    int[] rowFill = Arrays.copyOf(compRowStart, numComps);
+    int[] colFill = Arrays.copyOf(compColStart, numComps);
+    for (int v = 0; v < n + m; v++) {
+      int c = nodeComp[v];
+      if (c >= 0) {
+        if (v < n) {
+          compRows[rowFill[c]++] = v;
+        } else {
+          localCol[v - n] = colFill[c] - compColStart[c];
+          compCols[colFill[c]++] = v - n;
+        }
+      }
+    }
+
+    MatchingWrapper<R, C> prev = previous;
+    int[] prevMatching = null;
+    int[] prevColMate = null;
+    if (prev != null) {
+      prevMatching = previous.getMatching().stream().mapToInt(Integer::intValue).toArray();
+      prevColMate = new int[m];
+      Arrays.fill(prevColMate, -1);
+      for (int i = 0; i < n; i++) {
+        if (prevMatching[i] >= 0) {
+          prevColMate[prevMatching[i]] = i;
+        }
+      }
+      // release the chain of previous rounds
+      previous = null;
+    }
+
+    List<Integer> largeComps = new ArrayList<>();
+    for (int c = 0; c < numComps; c++) {
+      int numRows = compRowStart[c + 1] - compRowStart[c];
+      int numCols = compColStart[c + 1] - compColStart[c];
+      if (prev != null
+          && isUnchanged(
+              prev,
+              c,
+              nodeComp,
+              compRows,
+              compRowStart[c],
+              compRowStart[c + 1],
+              compCols,
+              compColStart[c],
+              compColStart[c + 1],
+              prevColMate)) {
+        for (int k = compRowStart[c]; k < compRowStart[c + 1]; k++) {
+          result[compRows[k]] = prevMatching[compRows[k]];
+        }
+      } else if (numRows == 1 || numCols == 1) {
+        matchGreedily(compRows, compRowStart[c], compRowStart[c + 1], result);
+      } else if (compEdges[c] >= PARALLEL_EDGES) {
+        largeComps.add(c);
+      } else {
+        matchComponent(
+            compRows,
+            compRowStart[c],
+            numRows,
+            compCols,
+            compColStart[c],
+            numCols,
+            compEdges[c],
+            localCol,
+            result);
+      }
+    }
+    // run in the central pool, the common pool is not bounded by NUM_THREADS
+    Utils.invokeParallel(
+        () ->
+            largeComps
+                .parallelStream()
+                .forEach(
+                    c ->
+                        matchComponent(
+                            compRows,
+                            compRowStart[c],
+                            compRowStart[c + 1] - compRowStart[c],
+                            compCols,
+                            compColStart[c],
+                            compColStart[c + 1] - compColStart[c],
+                            compEdges[c],
+                            localCol,
+                            result)));
+    return result;
+  }
+
+  /**
+   * Checks whether the previous matching can be kept for a component. This requires that the edges
+   * of its rows are unchanged, and that the previous matching does not match its columns with rows
+   * of other components. Then the previous matching restricted to this component is still
+   * optimal, as the component was (part of) a component of the previous graph.
+   */
+  private boolean isUnchanged(
+      MatchingWrapper<R, C> prev,
+      int c,
+      int[] nodeComp,
+      int[] compRows,
+      int rowFrom,
+      int rowTo,
+      int[] compCols,
+      int colFrom,
+      int colTo,
+      int[] prevColMate) {
+    for (int k = rowFrom; k < rowTo; k++) {
+      int i = compRows[k];
+      int e = rowStart[i];
+      int f = prev.rowStart[i];
+      if (rowStart[i + 1] - e != prev.rowStart[i + 1] - f) {
+        return false;
+      }
+      for (; e < rowStart[i + 1]; e++, f++) {
+        if (cols[e] != prev.cols[f] || algoWeights[e] != prev.algoWeights[f]) {
+          return false;
+        }
+      }
+    }
+    for (int k = colFrom; k < colTo; k++) {
+      int i = prevColMate[compCols[k]];
+      if (i >= 0 && nodeComp[i] != c) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int find(int[] parent, int v) {
+    while (parent[v] != v) {
+      parent[v] = parent[parent[v]];
+      v = parent[v];
+    }
+    return v;
+  }
+
+  /**
+   * Matches a component that consists of a single row or a single column, by choosing its edge of
+   * maximum weight.
+   */
+  private void matchGreedily(int[] compRows, int from, int to, int[] result) {
+    int bestRow = -1;
+    int bestEdge = -1;
+    for (int k = from; k < to; k++) {
+      int i = compRows[k];
+      for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+        if (bestEdge < 0 || algoWeights[e] > algoWeights[bestEdge]) {
+          bestRow = i;
+          bestEdge = e;
+        }
+      }
+    }
+    result[bestRow] = cols[bestEdge];
+  }
+
+  /** Matches the rows and columns of a component, given by ranges of compRows and compCols */
+  private void matchComponent(
+      int[] compRows,
+      int rowFrom,
+      int numRows,
+      int[] compCols,
+      int colFrom,
+      int numCols,
+      int numEdges,
+      int[] localCol,
+      int[] result) {
+    int[] subRowStart = new int[numRows + 1];
+    int[] subCols = new int[numEdges];
+    double[] subWeights = new double[numEdges];
+    for (int k = 0; k < numRows; k++) {
+      int i = compRows[rowFrom + k];
+      int f = subRowStart[k];
+      for (int e = rowStart[i]; e < rowStart[i + 1]; e++, f++) {
+        subCols[f] = localCol[cols[e]];
+        subWeights[f] = algoWeights[e];
+      }
+      subRowStart[k + 1] = f;
+    }
+    int[] subMatching;
+    if ((double) numEdges / ((long) numRows * numCols) <= Constants.SPARSE_MATCHING_DENSITY) {
+      subMatching =
+          new SparseMatchingAlgorithm(numRows, numCols, subRowStart, subCols, subWeights)
+              .getMatching();
+    } else {
+      MWBMatchingAlgorithm mwbm = new MWBMatchingAlgorithm(numRows, numCols);
+      for (int k = 0; k < numRows; k++) {
+        for (int j = 0, f = subRowStart[k]; j < numCols; j++) {
+          if (f < subRowStart[k + 1] && subCols[f] == j) {
+            mwbm.setWeight(k, j, subWeights[f++]);
+          } else {
+            mwbm.setWeight(k, j, Double.NEGATIVE_INFINITY);
+          }
+        }
+      }
+      subMatching = mwbm.getMatching();
+    }
+    for (int k = 0; k < numRows; k++) {
+      if (subMatching[k] >= 0) {
+        result[compRows[rowFrom + k]] = compCols[colFrom + subMatching[k]];
+      }
+    }
+  }
+
+  /**
+   * @return The similarity of row i and column j, also for pairs excluded from the matching, or
+   *     zero if the similarity has not been calculated (i.e. j was no candidate of row i)
+   */
   public double getWeight(int i, int j) {
-    return weights[i][j];
+    if (denseWeights != null) {
+      return denseWeights[i][j];
+    }
+    int e = Arrays.binarySearch(cols, rowStart[i], rowStart[i + 1], j);
+    return e < 0 ? prunedSims.getOrDefault((long) i * colList.size() + j, 0.) : sims[e];
   }
 
   public Set<R> getMatchedRows() {
@@ -145,7 +598,7 @@ public class MatchingWrapper<R, C> {
         .forEach(
             (i, j) -> {
               if (j >= 0) {
-                con.accept(rowList.get(i), colList.get(j), weights[i][j]);
+                con.accept(rowList.get(i), colList.get(j), getWeight(i, j));
               }
             });
   }
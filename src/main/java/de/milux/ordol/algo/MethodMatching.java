@@ -21,6 +21,7 @@ package de.milux.ordol.algo;
 import de.milux.ordol.Constants;
 import de.milux.ordol.data.*;
 import de.milux.ordol.helpers.DoubleHolder;
+import de.milux.ordol.helpers.Utils;
 import java.util.*;
 import org.apache.commons.collections4.Equator;
 import org.apache.commons.collections4.ListUtils;
@@ -108,7 +109,7 @@ public class MethodMatching {
 
           @Override
           public int hash(UnitData ud) {
-            return ud.hashCode();
+            return ud.instrId;
           }
         });
   }
@@ -120,15 +121,13 @@ public class MethodMatching {
     }
 
     // Measure similarity of methods based on k-grams
-    Set<Integer> hLib = mLib.getKGramHashes();
-      Set<Integer> hApp = mApp.getKGramHashes();
-    if (!hLib.isEmpty() && !hApp.isEmpty()) {
-      Set<Integer> isec = new HashSet<>(hLib);
-      isec.retainAll(hApp);
-      return 2. * isec.size() / (hLib.size() + hApp.size());
+    int[] hLib = mLib.getKGramHashArray();
+    int[] hApp = mApp.getKGramHashArray();
+    if (hLib.length > 0 && hApp.length > 0) {
+      return 2. * Utils.intersectionSize(hLib, hApp) / (hLib.length + hApp.length);
     } else {
       // if both methods are empty, it's a perfect match, otherwise it's the opposite
-      if (hLib.size() == hApp.size()) {
+      if (hLib.length == hApp.length) {
         return 1.;
       } else {
         return 0.;
@@ -0,0 +1,245 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.algo;
+
+import java.util.Arrays;
+
+/**
+ * An engine for finding the maximum-weight matching in a sparse bipartite graph, given as edge
+ * lists of the left side nodes (compressed sparse rows). Unlike {@link MWBMatchingAlgorithm}, time
+ * and memory depend on the number of edges instead of <i>n</i> x <i>m</i>.
+ *
+ * <p>It uses successive shortest augmenting paths: the matching is a min-cost flow with costs
+ * -w<sub>ij</sub>, and each round augments along the cheapest path from a free left node to a free
+ * right node, found with Dijkstra on reduced costs (Johnson potentials). The k-th round yields a
+ * maximum-weight matching of size k, and path costs are non-decreasing, so the algorithm stops as
+ * soon as the cheapest path does not increase the weight anymore. Each round costs O(<i>E</i> log
+ * <i>E</i>), with at most min(<i>n</i>, <i>m</i>) rounds.
+ *
+ * <p>Ties between matchings of equal weight may be resolved differently than by {@link
+ * MWBMatchingAlgorithm}.
+ */
+public class SparseMatchingAlgorithm {
+  /** Tolerance for comparisons to zero, to account for floating-point imprecision */
+  private static final double TOL = 1e-10;
+
+  // Number of left side nodes
+  private final int n;
+  // Number of right side nodes
+  private final int m;
+
+  // The edges of left node i are rowStart[i] until rowStart[i + 1] (exclusive)
+  private final int[] rowStart;
+  private final int[] cols;
+  private final double[] weights;
+
+  /**
+   * Creates a SparseMatchingAlgorithm for an n x m graph.
+   *
+   * @param n The number of left side nodes
+   * @param m The number of right side nodes
+   * @param rowStart The offsets of the edges of each left node in cols and weights, length n + 1
+   * @param cols The right side nodes of the edges
+   * @param weights The finite weights of the edges
+   */
+  public SparseMatchingAlgorithm(int n, int m, int[] rowStart, int[] cols, double[] weights) {
+    if (n < 0 || m < 0) {
+      throw new IllegalArgumentException("Negative num nodes: " + n + " or " + m);
+    }
+    if (rowStart.length != n + 1 || rowStart[n] > cols.length || rowStart[n] > weights.length) {
+      throw new IllegalArgumentException("Edge lists do not match the graph size!");
+    }
+    for (int e = 0; e < rowStart[n]; e++) {
+      if (cols[e] < 0 || cols[e] >= m) {
+        throw new IllegalArgumentException("j-value out of range: " + cols[e]);
+      }
+      if (Double.isNaN(weights[e]) || Double.isInfinite(weights[e])) {
+        throw new IllegalArgumentException("Illegal weight: " + weights[e]);
+      }
+    }
+    this.n = n;
+    this.m = m;
+    this.rowStart = rowStart;
+    this.cols = cols;
+    this.weights = weights;
+  }
+
+  /**
+   * Returns a maximum-weight matching. The matching is represented as an array arr of length n,
+   * where arr[i] = j if (i,j) is in the matching, and arr[i] = -1 if i is unmatched.
+   */
+  public int[] getMatching() {
+    // nodes 0..n-1 are the left nodes, n..n+m-1 the right nodes, n+m is the sink
+    final int sink = n + m;
+    int[] rowMate = new int[n];
+    int[] rowMateEdge = new int[n];
+    int[] colMate = new int[m];
+    Arrays.fill(rowMate, -1);
+    Arrays.fill(colMate, -1);
+
+    // potentials keep all reduced costs non-negative, the source and free left nodes stay at 0
+    double[] pot = new double[n + m + 1];
+    for (int e = 0; e < rowStart[n]; e++) {
+      pot[n + cols[e]] = Math.min(pot[n + cols[e]], -weights[e]);
+    }
+    for (int j = 0; j < m; j++) {
+      pot[sink] = Math.min(pot[sink], pot[n + j]);
+    }
+
+    double[] dist = new double[n + m + 1];
+    // the edge used to reach each right node, and the right node used to reach the sink
+    int[] predEdge = new int[m];
+    int[] predRow = new int[m];
+    int predSink = -1;
+    boolean[] done = new boolean[n + m + 1];
+    Heap heap = new Heap(n + m + 1);
+    while (true) {
+      Arrays.fill(dist, Double.POSITIVE_INFINITY);
+      Arrays.fill(done, false);
+      heap.clear();
+      for (int i = 0; i < n; i++) {
+        if (rowMate[i] < 0 && rowStart[i] < rowStart[i + 1]) {
+          dist[i] = 0.;
+          heap.push(0., i);
+        }
+      }
+      while (!heap.isEmpty()) {
+        int u = heap.pop();
+        if (done[u]) {
+          continue;
+        }
+        done[u] = true;
+        if (u == sink) {
+          break;
+        }
+        double du = dist[u];
+        if (u < n) {
+          for (int e = rowStart[u], end = rowStart[u + 1]; e < end; e++) {
+            int v = n + cols[e];
+            if (rowMate[u] != cols[e] && !done[v]) {
+              double d = du + Math.max(0., -weights[e] + pot[u] - pot[v]);
+              if (d < dist[v]) {
+                dist[v] = d;
+                predEdge[v - n] = e;
+                predRow[v - n] = u;
+                heap.push(d, v);
+              }
+            }
+          }
+        } else {
+          int i = colMate[u - n];
+          int v = i < 0 ? sink : i;
+          double cost = i < 0 ? 0. : weights[rowMateEdge[i]];
+          double d = du + Math.max(0., cost + pot[u] - pot[v]);
+          if (!done[v] && d < dist[v]) {
+            dist[v] = d;
+            if (v == sink) {
+              predSink = u - n;
+            }
+            heap.push(d, v);
+          }
+        }
+      }
+      // stop if no augmenting path is left, or if the cheapest one does not increase the weight
+      if (!done[sink] || dist[sink] + pot[sink] >= -TOL) {
+        break;
+      }
+      double dSink = dist[sink];
+      for (int v = 0; v <= sink; v++) {
+        pot[v] += Math.min(dist[v], dSink);
+      }
+      // augment along the path, from the free right node back to the free left node
+      for (int j = predSink; j >= 0; ) {
+        int e = predEdge[j];
+        int i = predRow[j];
+        int prev = rowMate[i];
+        rowMate[i] = j;
+        rowMateEdge[i] = e;
+        colMate[j] = i;
+        j = prev;
+      }
+    }
+    return rowMate;
+  }
+
+  /** Binary min-heap of nodes with lazy deletion, i.e. a node may be contained multiple times */
+  private static final class Heap {
+    private double[] keys;
+    private int[] nodes;
+    private int size = 0;
+
+    Heap(int capacity) {
+      keys = new double[capacity];
+      nodes = new int[capacity];
+    }
+
+    void clear() {
+      size = 0;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void push(double key, int node) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        nodes = Arrays.copyOf(nodes, size * 2);
+      }
+      int pos = size++;
+      while (pos > 0) {
+        int parent = (pos - 1) >>> 1;
+        if (keys[parent] <= key) {
+          break;
+        }
+        keys[pos] = keys[parent];
+        nodes[pos] = nodes[parent];
+        pos = parent;
+      }
+      keys[pos] = key;
+      nodes[pos] = node;
+    }
+
+    /** Removes the node with the smallest key and returns it */
+    int pop() {
+      int top = nodes[0];
+      double key = keys[--size];
+      int node = nodes[size];
+      int pos = 0;
+      while (true) {
+        int child = 2 * pos + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && keys[child + 1] < keys[child]) {
+          child++;
+        }
+        if (key <= keys[child]) {
+          break;
+        }
+        keys[pos] = keys[child];
+        nodes[pos] = nodes[child];
+        pos = child;
+      }
+      keys[pos] = key;
+      nodes[pos] = node;
+      return top;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import de.milux.ordol.data.CompressedBitSet;
+import de.milux.ordol.helpers.ByteBufferInputStream;
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Inverted index over the library bitsets: for each bit of the bit vector, the IDs of all
+ * libraries having this bit set. The common bits of an app with all libraries are counted in one
+ * pass over the bits populated by the app, instead of intersecting the app bitset with each
+ * library bitset. The index is the transposed corpus matrix: the posting lists of the bits of one
+ * app word are adjacent, so a pass over the app bitset reads the index front to back. Layout
+ * (compressed sparse rows):
+ *
+ * <pre>
+ * header     magic, version, K, bit vector size, library count, posting count (int)
+ * libraries  key (UTF), popcount (int)
+ * offsets    start of the posting list of each bit, followed by the posting count (int)
+ * postings   library IDs, ascending for each bit (char if there are at most 65536 libraries,
+ *            int otherwise)
+ * </pre>
+ *
+ * <p>Slicing by words instead of bits, i.e. storing a (library ID, word) pair for each non-zero
+ * word of each library, would need to visit all pairs of every app word with at least one bit.
+ * With app bitsets populated by a few percent, this touches most of the index, while the posting
+ * lists of the single bits are much shorter.
+ */
+public class BitIndex {
+  public static final int MAGIC = 0x4F524449; // "ORDI"
+  public static final int VERSION = 2;
+  /** Library IDs are stored as chars up to this number of libraries */
+  public static final int MAX_CHAR_LIBRARIES = 1 << 16;
+
+  private final String[] libraries;
+  private final int[] popCounts;
+  private final Map<String, Integer> libraryIds;
+  private final int size;
+  private final IntBuffer offsets;
+  private final CharBuffer charPostings;
+  private final IntBuffer intPostings;
+
+  /**
+   * Opens an index, which must have been created for the given K and bit vector size.
+   *
+   * @param indexPath The path of the index file
+   * @param k The length of the hashed k-grams
+   * @param size The size of the bit vectors
+   */
+  public BitIndex(Path indexPath, int k, int size) throws IOException {
+    MappedByteBuffer buf;
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    DataInputStream in = new DataInputStream(new ByteBufferInputStream(buf));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a bit index: " + indexPath);
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported bit index version " + version);
+    }
+    int indexK = in.readInt();
+    int indexSize = in.readInt();
+    if (indexK != k || indexSize != size) {
+      throw new IOException(
+          "Bit index was created for K=" + indexK + " and " + indexSize + " bits");
+    }
+    this.size = size;
+    int libraryCount = in.readInt();
+    int postingCount = in.readInt();
+    this.libraries = new String[libraryCount];
+    this.popCounts = new int[libraryCount];
+    this.libraryIds = new HashMap<>(libraryCount * 2);
+    for (int l = 0; l < libraryCount; l++) {
+      libraries[l] = in.readUTF();
+      popCounts[l] = in.readInt();
+      libraryIds.put(libraries[l], l);
+    }
+    // the stream has advanced the buffer to the offsets
+    ByteBuffer rows = buf.slice();
+    this.offsets = rows.asIntBuffer();
+    offsets.limit(size + 1);
+    rows.position((size + 1) * 4);
+    ByteBuffer postingBuf = rows.slice();
+    Buffer postings;
+    if (libraryCount <= MAX_CHAR_LIBRARIES) {
+      this.charPostings = postingBuf.asCharBuffer();
+      this.intPostings = null;
+      postings = charPostings;
+    } else {
+      this.charPostings = null;
+      this.intPostings = postingBuf.asIntBuffer();
+      postings = intPostings;
+    }
+    if (postings.remaining() != postingCount) {
+      throw new IOException("Bit index is truncated: " + indexPath);
+    }
+  }
+
+  /** @return The keys of all indexed libraries, the index in the list is the library ID */
+  public List<String> getLibraries() {
+    return Collections.unmodifiableList(Arrays.asList(libraries));
+  }
+
+  /** @return The ID of the library with the given key, or -1 if it is not indexed */
+  public int getLibraryId(String key) {
+    return libraryIds.getOrDefault(key, -1);
+  }
+
+  /** @return The number of bits set in the bitset of the given library */
+  public int getPopCount(int libraryId) {
+    return popCounts[libraryId];
+  }
+
+  /**
+   * Counts the bits the given bitset has in common with each indexed library.
+   *
+   * @return The cardinality of the intersection with each library, indexed by library ID
+   */
+  public int[] countHits(CompressedBitSet bitSet) {
+    int[] hits = new int[libraries.length];
+    bitSet.forEach(
+        bit -> {
+          if (bit >= size) {
+            return;
+          }
+          int end = offsets.get(bit + 1);
+          if (charPostings != null) {
+            for (int p = offsets.get(bit); p < end; p++) {
+              hits[charPostings.get(p)]++;
+            }
+          } else {
+            for (int p = offsets.get(bit); p < end; p++) {
+              hits[intPostings.get(p)]++;
+            }
+          }
+        });
+    return hits;
+  }
+
+  /**
+   * Updates the counts returned by {@link #countHits} after a bit of the bitset has been cleared.
+   *
+   * @param hits The cardinality of the intersection with each library, indexed by library ID
+   * @param bit The cleared bit
+   */
+  public void removeHits(int[] hits, int bit) {
+    if (bit >= size) {
+      return;
+    }
+    int end = offsets.get(bit + 1);
+    if (charPostings != null) {
+      for (int p = offsets.get(bit); p < end; p++) {
+        hits[charPostings.get(p)]--;
+      }
+    } else {
+      for (int p = offsets.get(bit); p < end; p++) {
+        hits[intPostings.get(p)]--;
+      }
+    }
+  }
+
+  /**
+   * Creates an index over the given libraries. The bitset of each library is requested twice, once
+   * to count the postings of each bit, then to fill the posting lists.
+   *
+   * @param indexPath The path of the index file, which is replaced atomically
+   * @param k The length of the hashed k-grams
+   * @param size The size of the bit vectors
+   * @param keys The keys of the libraries, their order defines the library IDs
+   * @param bitSets Supplies the bitset of a library
+   */
+  public static void write(
+      Path indexPath,
+      int k,
+      int size,
+      List<String> keys,
+      Function<String, CompressedBitSet> bitSets)
+      throws IOException {
+    int[] popCounts = new int[keys.size()];
+    // count the postings of each bit, shifted by one for the prefix sums
+    int[] offsets = new int[size + 1];
+    for (int l = 0; l < keys.size(); l++) {
+      CompressedBitSet bitSet = bitSets.apply(keys.get(l));
+      forEachBit(bitSet, size, bit -> offsets[bit + 1]++);
+      popCounts[l] = bitSet.cardinality();
+    }
+    for (int b = 0; b < size; b++) {
+      offsets[b + 1] += offsets[b];
+    }
+    int[] postings = new int[offsets[size]];
+    int[] fill = Arrays.copyOf(offsets, size);
+    for (int l = 0; l < keys.size(); l++) {
+      final int libraryId = l;
+      forEachBit(bitSets.apply(keys.get(l)), size, bit -> postings[fill[bit]++] = libraryId);
+    }
+
+    Path tmpPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    Files.createDirectories(indexPath.getParent());
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(k);
+      out.writeInt(size);
+      out.writeInt(keys.size());
+      out.writeInt(postings.length);
+      for (int l = 0; l < keys.size(); l++) {
+        out.writeUTF(keys.get(l));
+        out.writeInt(popCounts[l]);
+      }
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      boolean charPostings = keys.size() <= MAX_CHAR_LIBRARIES;
+      for (int posting : postings) {
+        if (charPostings) {
+          out.writeChar(posting);
+        } else {
+          out.writeInt(posting);
+        }
+      }
+    }
+    Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void forEachBit(CompressedBitSet bitSet, int size, IntConsumer consumer) {
+    bitSet.forEach(
+        bit -> {
+          if (bit < size) {
+            consumer.accept(bit);
+          }
+        });
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A (de)compression scheme for library files written by ordol, i.e. JSON signatures and cached
+ * bitsets. Codecs are selected by name, existing files are recognized by their extension, see
+ * {@link Codecs}.
+ */
+public interface Codec {
+  /** @return The name of the codec, as used for command line options */
+  String getName();
+
+  /** @return The extension appended to the names of files written with this codec */
+  String getExtension();
+
+  byte[] encode(byte[] data);
+
+  /**
+   * Decodes the remaining bytes of the given buffer, the result may share its content.
+   *
+   * @param data The encoded data
+   * @return The decoded data, from position 0 to the limit of the buffer
+   */
+  ByteBuffer decode(ByteBuffer data) throws IOException;
+
+  default void write(Path path, byte[] data) throws IOException {
+    Files.write(path, encode(data));
+  }
+
+  default ByteBuffer read(Path path) throws IOException {
+    return decode(ByteBuffer.wrap(Files.readAllBytes(path)));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/** The available codecs, see {@link Codec} */
+public final class Codecs {
+  public static final Codec NONE = new RawCodec();
+  /** Fastest deflate, filtered for data with few repetitions (e.g. bitsets) */
+  public static final Codec DEFLATE_FAST =
+      new DeflateCodec("deflate-1", Deflater.BEST_SPEED, Deflater.FILTERED);
+
+  public static final Codec DEFLATE =
+      new DeflateCodec("deflate-6", Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+  public static final Codec DEFLATE_BEST =
+      new DeflateCodec("deflate-9", Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+  public static final Codec LZ = new LZCodec();
+  /** All codecs, the first one with a given extension is used to read existing files */
+  public static final List<Codec> ALL =
+      Collections.unmodifiableList(Arrays.asList(DEFLATE, DEFLATE_FAST, DEFLATE_BEST, LZ, NONE));
+
+  private Codecs() {}
+
+  public static Codec forName(String name) {
+    for (Codec c : ALL) {
+      if (c.getName().equals(name)) {
+        return c;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Unknown codec " + name + ", must be one of " + getNames());
+  }
+
+  /** @return The names of all codecs, separated by commas */
+  public static String getNames() {
+    return ALL.stream().map(Codec::getName).collect(Collectors.joining(", "));
+  }
+
+  /**
+   * Finds the codec of a file by its extension.
+   *
+   * @param path The path of the file
+   * @param ext The extension of the file type, preceding the codec extension, e.g. ".json"
+   * @return The codec used for the file, or null if the file does not have the given type
+   */
+  public static Codec forPath(Path path, String ext) {
+    String fileName = path.getFileName().toString();
+    for (Codec c : ALL) {
+      if (fileName.endsWith(ext + c.getExtension())) {
+        return c;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes the file type and codec extension from the given file name or path.
+   *
+   * @param fileName The file name or path
+   * @param ext The extension of the file type, preceding the codec extension, e.g. ".json"
+   * @return The file name without extensions, or null if the file does not have the given type
+   */
+  public static String stripExtension(String fileName, String ext) {
+    for (Codec c : ALL) {
+      String fullExt = ext + c.getExtension();
+      if (fileName.endsWith(fullExt)) {
+        return fileName.substring(0, fileName.length() - fullExt.length());
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.MethodData;
+import de.milux.ordol.data.UnitData;
+import de.milux.ordol.helpers.ByteBufferInputStream;
+import de.milux.ordol.helpers.Utils;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A single file containing the classes of all libraries of the corpus, together with an index of
+ * library names, their deduplicated version names (from the index.json files) and precomputed
+ * metadata. Classes with identical content (e.g. unchanged classes in neighbouring versions of a
+ * library) are stored only once and referenced by ID from all libraries containing them. Layout:
+ *
+ * <pre>
+ * header   magic (int), version (int), index offset (long)
+ * classes  one binary signature (see {@link SignatureFormat}) holding each distinct class once
+ * index    entry count (int), entries: path, name (UTF), methods (int), weight (long),
+ *          class count (int), class IDs (int)
+ * dict     instruction count (int), instructions: length (int), UTF-8 bytes
+ * </pre>
+ *
+ * The index is read once when the pack is opened, the class signature is memory-mapped. Class
+ * headers are shared between all libraries (and threads) as long as they are reachable, so their
+ * lazily computed bitsets and methods are shared as well. The instruction dictionary holds all
+ * distinct instructions of the corpus in order of their first appearance and is used to preload
+ * the {@link de.milux.ordol.data.InstructionDictionary}.
+ */
+public class CorpusPack implements Closeable {
+  public static final int MAGIC = 0x4F524450; // "ORDP"
+  public static final int VERSION = 3;
+  private static final int HEADER_SIZE = 16;
+
+  /** Index entry of a single library (version) */
+  public static class Entry {
+    /** The path of the library relative to the library directory, without extension */
+    public final String path;
+    /** The name of the library, containing all versions with identical signatures */
+    public final String name;
+    /** The IDs of the classes of this library in the shared class signature */
+    public final int[] classIds;
+
+    public final int classCount;
+    public final int methodCount;
+    public final long weight;
+
+    public Entry(String path, String name, int[] classIds, int methodCount, long weight) {
+      this.path = path;
+      this.name = name;
+      this.classIds = classIds;
+      this.classCount = classIds.length;
+      this.methodCount = methodCount;
+      this.weight = weight;
+    }
+  }
+
+  private final FileChannel channel;
+  private final Map<String, Entry> entries;
+  private final List<String> instructions;
+  private final SignatureReader classReader;
+  /** Shared class headers, using soft values (i.e. SoftReference gc semantics) */
+  private final LoadingCache<Integer, ClassData> classCache =
+      CacheBuilder.newBuilder()
+          .softValues()
+          .build(
+              new CacheLoader<Integer, ClassData>() {
+                @Override
+                public ClassData load(Integer classId) {
+                  return classReader.readClassHeader(classId);
+                }
+              });
+
+  public CorpusPack(Path packPath) throws IOException {
+    this.channel = FileChannel.open(packPath, StandardOpenOption.READ);
+    try {
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt(0) != MAGIC) {
+        throw new IOException("Not a corpus pack: " + packPath);
+      }
+      if (header.getInt(4) != VERSION) {
+        throw new IOException(
+            "Unsupported corpus pack version " + header.getInt(4) + ", please re-create the pack");
+      }
+      long indexOffset = header.getLong(8);
+      this.classReader =
+          new SignatureReader(
+              channel.map(
+                  FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexOffset - HEADER_SIZE));
+      MappedByteBuffer index =
+          channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, channel.size() - indexOffset);
+      DataInputStream in = new DataInputStream(new ByteBufferInputStream(index));
+      int count = in.readInt();
+      Map<String, Entry> entries = new LinkedHashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        String name = in.readUTF();
+        int methodCount = in.readInt();
+        long weight = in.readLong();
+        int[] classIds = new int[in.readInt()];
+        for (int c = 0; c < classIds.length; c++) {
+          classIds[c] = in.readInt();
+        }
+        entries.put(path, new Entry(path, name, classIds, methodCount, weight));
+      }
+      this.entries = Collections.unmodifiableMap(entries);
+      int instrCount = in.readInt();
+      String[] instructions = new String[instrCount];
+      for (int i = 0; i < instrCount; i++) {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        instructions[i] = new String(b, StandardCharsets.UTF_8).intern();
+      }
+      this.instructions = Collections.unmodifiableList(Arrays.asList(instructions));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** @return All entries of the pack, keyed by their path, in the order they were packed */
+  public Map<String, Entry> getEntries() {
+    return entries;
+  }
+
+  /** @return All distinct instructions of the corpus */
+  public List<String> getInstructions() {
+    return instructions;
+  }
+
+  /** @return The number of distinct classes in the pack */
+  public int getClassCount() {
+    return classReader.getClassCount();
+  }
+
+  public Entry getEntry(String path) {
+    return entries.get(path);
+  }
+
+  /** @return Fully read, unshared copies of the classes of the given entry */
+  public List<ClassData> getClassData(Entry e) {
+    List<ClassData> cdList = new ArrayList<>(e.classIds.length);
+    for (int classId : e.classIds) {
+      cdList.add(classReader.readClass(classId));
+    }
+    return cdList;
+  }
+
+  /**
+   * Returns the classes of the given entry as shared headers, their methods are read on first
+   * access. Classes contained in several libraries are represented by the same instance.
+   *
+   * @return The classes of the given entry
+   */
+  public List<ClassData> getClassHeaders(Entry e) {
+    List<ClassData> cdList = new ArrayList<>(e.classIds.length);
+    for (int classId : e.classIds) {
+      cdList.add(classCache.getUnchecked(classId));
+    }
+    return cdList;
+  }
+
+  @Override
+  public void close() throws IOException {
+    classCache.invalidateAll();
+    channel.close();
+  }
+
+  /**
+   * Writes a corpus pack, libraries must be added in the order they should appear in the index.
+   * All distinct classes are collected in memory and written by {@link #finish()}. Closing a writer
+   * that has not been finished discards everything added and leaves an existing pack untouched.
+   */
+  public static class Writer implements Closeable {
+    private final Path packPath;
+    private final SignatureWriter classWriter = new SignatureWriter();
+    /** Maps the content hashes of all added classes to their IDs */
+    private final Map<ByteBuffer, Integer> classIds = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<String> instructions = new LinkedHashSet<>();
+    private final MessageDigest digest;
+    private Path tmpPath = null;
+    private int totalClasses = 0;
+    private boolean finished = false;
+
+    public Writer(Path packPath) {
+      this.packPath = packPath;
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException nsa) {
+        throw new RuntimeException(
+            "This platform does not support SHA-256 hash algorithm, class hashing failed!");
+      }
+    }
+
+    /**
+     * Computes the content hash of a class, covering all data stored in a signature. This is
+     * stricter than {@link ClassData#equals(Object)}, which e.g. ignores referenced types.
+     */
+    private ByteBuffer contentHash(ClassData cd) {
+      SignatureWriter sw = new SignatureWriter(new int[0]);
+      sw.add(cd);
+      return ByteBuffer.wrap(digest.digest(sw.toByteArray()));
+    }
+
+    public void add(String path, String name, List<ClassData> cdList) throws IOException {
+      if (finished) {
+        throw new IllegalStateException("Corpus pack has already been written");
+      }
+      int[] ids = new int[cdList.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ClassData cd = cdList.get(i);
+        ByteBuffer hash = contentHash(cd);
+        Integer id = classIds.get(hash);
+        if (id == null) {
+          id = classWriter.add(cd);
+          classIds.put(hash, id);
+          for (MethodData md : cd) {
+            for (List<UnitData> block : md.blocks) {
+              block.forEach(ud -> instructions.add(ud.instr));
+            }
+          }
+        }
+        ids[i] = id;
+      }
+      totalClasses += ids.length;
+      entries.add(
+          new Entry(
+              path,
+              name,
+              ids,
+              cdList.stream().mapToInt(ClassData::size).sum(),
+              cdList.stream().mapToLong(cd -> cd.weight).sum()));
+    }
+
+    /** @return The number of classes added, including duplicates */
+    public int getTotalClassCount() {
+      return totalClasses;
+    }
+
+    /** @return The number of distinct classes added */
+    public int getClassCount() {
+      return classIds.size();
+    }
+
+    /**
+     * Writes the pack to a temporary file, then moves it to its final location. Must only be
+     * called after all libraries have been added.
+     */
+    public void finish() throws IOException {
+      if (finished) {
+        throw new IllegalStateException("Corpus pack has already been written");
+      }
+      // unique per writer, concurrent packers must not write to the same file
+      tmpPath = Utils.getTempSibling(packPath);
+      try (FileChannel channel =
+          FileChannel.open(tmpPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        channel.position(HEADER_SIZE);
+        OutputStream os = Channels.newOutputStream(channel);
+        classWriter.writeTo(os);
+        long indexOffset = channel.position();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        out.writeInt(entries.size());
+        for (Entry e : entries) {
+          out.writeUTF(e.path);
+          out.writeUTF(e.name);
+          out.writeInt(e.methodCount);
+          out.writeLong(e.weight);
+          out.writeInt(e.classIds.length);
+          for (int classId : e.classIds) {
+            out.writeInt(classId);
+          }
+        }
+        out.writeInt(instructions.size());
+        for (String instr : instructions) {
+          byte[] b = instr.getBytes(StandardCharsets.UTF_8);
+          out.writeInt(b.length);
+          out.write(b);
+        }
+        out.flush();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(indexOffset).flip();
+        while (header.hasRemaining()) {
+          channel.write(header, header.position());
+        }
+        channel.force(false);
+      }
+      Files.move(
+          tmpPath, packPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      finished = true;
+    }
+
+    /** Removes the temporary file of an unfinished pack, an existing pack is left untouched */
+    @Override
+    public void close() throws IOException {
+      if (!finished && tmpPath != null) {
+        Files.deleteIfExists(tmpPath);
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** zlib (deflate) compression, all levels and strategies write the same format */
+public class DeflateCodec implements Codec {
+  private final String name;
+  private final int level;
+  private final int strategy;
+
+  public DeflateCodec(String name, int level, int strategy) {
+    this.name = name;
+    this.level = level;
+    this.strategy = strategy;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getExtension() {
+    return ".zlib";
+  }
+
+  @Override
+  public byte[] encode(byte[] data) {
+    Deflater deflater = new Deflater(level);
+    try {
+      deflater.setStrategy(strategy);
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+      byte[] buffer = new byte[1 << 16];
+      while (!deflater.finished()) {
+        bos.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return bos.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      if (data.hasArray()) {
+        inflater.setInput(
+            data.array(), data.arrayOffset() + data.position(), data.remaining());
+      } else {
+        byte[] input = new byte[data.remaining()];
+        data.duplicate().get(input);
+        inflater.setInput(input);
+      }
+      byte[] output = new byte[Math.max(1 << 16, data.remaining() * 4)];
+      int length = 0;
+      while (!inflater.finished()) {
+        if (length == output.length) {
+          output = Arrays.copyOf(output, output.length * 2);
+        }
+        int inflated = inflater.inflate(output, length, output.length - length);
+        if (inflated == 0
+            && !inflater.finished()
+            && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Unexpected end of zlib data");
+        }
+        length += inflated;
+      }
+      return ByteBuffer.wrap(output, 0, length).slice();
+    } catch (DataFormatException dfe) {
+      throw new IOException(dfe);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 compression, using the LZ4 block format: sequences of a token (literal and match
+ * length nibbles), optional length bytes, literals and a 2-byte little-endian match offset. The
+ * block is preceded by the decoded length (int), there is no frame or checksum. Compression is
+ * greedy with a single hash table, which trades ratio for speed, decompression only copies bytes.
+ */
+public class LZCodec implements Codec {
+  private static final int MIN_MATCH = 4;
+  private static final int MAX_OFFSET = 0xFFFF;
+  /** The last 5 bytes are always literals, the last match must start 12 bytes before the end */
+  private static final int LAST_LITERALS = 5;
+
+  private static final int MF_LIMIT = 12;
+  private static final int HASH_BITS = 16;
+  /** Increases the step width in incompressible regions, every 2^SKIP_SHIFT bytes */
+  private static final int SKIP_SHIFT = 6;
+  /** Each byte of compressed data can extend a match by at most 255 bytes */
+  private static final int MAX_RATIO = 255;
+
+  @Override
+  public String getName() {
+    return "lz";
+  }
+
+  @Override
+  public String getExtension() {
+    return ".lz";
+  }
+
+  @Override
+  public byte[] encode(byte[] src) {
+    int n = src.length;
+    byte[] dst = new byte[4 + n + n / 255 + 16];
+    writeIntBE(dst, 0, n);
+    int op = 4;
+    int anchor = 0;
+    int ip = 0;
+    int matchLimit = n - MF_LIMIT;
+    int literalLimit = n - LAST_LITERALS;
+    // positions + 1 of previous occurrences, 0 means no entry
+    int[] table = new int[1 << HASH_BITS];
+    while (ip < matchLimit) {
+      int seq = readIntLE(src, ip);
+      int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+      int ref = table[h] - 1;
+      table[h] = ip + 1;
+      if (ref < 0 || ip - ref > MAX_OFFSET || readIntLE(src, ref) != seq) {
+        ip += 1 + ((ip - anchor) >>> SKIP_SHIFT);
+        continue;
+      }
+      // extend the match backwards into the pending literals, then forwards
+      while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+        ip--;
+        ref--;
+      }
+      int len = MIN_MATCH;
+      while (ip + len < literalLimit && src[ip + len] == src[ref + len]) {
+        len++;
+      }
+      op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, len);
+      ip += len;
+      anchor = ip;
+    }
+    op = writeSequence(dst, op, src, anchor, n - anchor, 0, 0);
+    return Arrays.copyOf(dst, op);
+  }
+
+  /** Writes a sequence, match length 0 denotes the last sequence consisting only of literals */
+  private static int writeSequence(
+      byte[] dst, int op, byte[] src, int litStart, int litLen, int offset, int matchLen) {
+    int tokenPos = op++;
+    int token = Math.min(litLen, 15) << 4;
+    if (litLen >= 15) {
+      op = writeLength(dst, op, litLen - 15);
+    }
+    System.arraycopy(src, litStart, dst, op, litLen);
+    op += litLen;
+    if (matchLen > 0) {
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      int ml = matchLen - MIN_MATCH;
+      token |= Math.min(ml, 15);
+      if (ml >= 15) {
+        op = writeLength(dst, op, ml - 15);
+      }
+    }
+    dst[tokenPos] = (byte) token;
+    return op;
+  }
+
+  private static int writeLength(byte[] dst, int op, int len) {
+    while (len >= 255) {
+      dst[op++] = (byte) 255;
+      len -= 255;
+    }
+    dst[op++] = (byte) len;
+    return op;
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data) throws IOException {
+    byte[] src;
+    int ip;
+    int end;
+    if (data.hasArray()) {
+      src = data.array();
+      ip = data.arrayOffset() + data.position();
+      end = ip + data.remaining();
+    } else {
+      src = new byte[data.remaining()];
+      data.duplicate().get(src);
+      ip = 0;
+      end = src.length;
+    }
+    try {
+      int n = readIntBE(src, ip);
+      ip += 4;
+      // reject corrupt lengths before allocating the output
+      if (n < 0 || n > (long) (end - ip) * MAX_RATIO + MIN_MATCH + 15) {
+        throw new IOException("Invalid LZ data length " + n);
+      }
+      byte[] dst = new byte[n];
+      int op = 0;
+      while (ip < end) {
+        int token = src[ip++] & 0xFF;
+        int litLen = token >>> 4;
+        if (litLen == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xFF;
+            litLen += b;
+          } while (b == 255);
+        }
+        System.arraycopy(src, ip, dst, op, litLen);
+        ip += litLen;
+        op += litLen;
+        if (op == n) {
+          // the last sequence has no match
+          break;
+        }
+        int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+        int matchLen = token & 15;
+        if (matchLen == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xFF;
+            matchLen += b;
+          } while (b == 255);
+        }
+        matchLen += MIN_MATCH;
+        int ref = op - offset;
+        if (offset == 0 || ref < 0) {
+          throw new IOException("Invalid LZ match offset " + offset);
+        }
+        if (offset >= matchLen) {
+          System.arraycopy(dst, ref, dst, op, matchLen);
+        } else {
+          // overlapping match, repeats the last offset bytes
+          for (int i = 0; i < matchLen; i++) {
+            dst[op + i] = dst[ref + i];
+          }
+        }
+        op += matchLen;
+      }
+      if (op != n) {
+        throw new IOException("Unexpected end of LZ data");
+      }
+      return ByteBuffer.wrap(dst);
+    } catch (IndexOutOfBoundsException ioobe) {
+      throw new IOException("Corrupt LZ data", ioobe);
+    }
+  }
+
+  private static int readIntLE(byte[] b, int i) {
+    return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+  }
+
+  private static int readIntBE(byte[] b, int i) {
+    return b[i] << 24 | (b[i + 1] & 0xFF) << 16 | (b[i + 2] & 0xFF) << 8 | (b[i + 3] & 0xFF);
+  }
+
+  private static void writeIntBE(byte[] b, int i, int v) {
+    b[i] = (byte) (v >>> 24);
+    b[i + 1] = (byte) (v >>> 16);
+    b[i + 2] = (byte) (v >>> 8);
+    b[i + 3] = (byte) v;
+  }
+}
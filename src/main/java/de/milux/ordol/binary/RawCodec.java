@@ -16,16 +16,37 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <https://www.gnu.org/licenses/>.
  */
-package de.milux.ordol.data;
+package de.milux.ordol.binary;
 
-import java.util.BitSet;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
-public class BitSetWrapper {
-  public final BitSet bitSet;
-  public final int popCount;
+/** Stores data uncompressed, files are memory-mapped for reading */
+public class RawCodec implements Codec {
 
-  public BitSetWrapper(BitSet bitSet) {
-    this.bitSet = bitSet;
-    this.popCount = bitSet.cardinality();
+  @Override
+  public String getName() {
+    return "none";
+  }
+
+  @Override
+  public String getExtension() {
+    return ".raw";
+  }
+
+  @Override
+  public byte[] encode(byte[] data) {
+    return data;
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data) {
+    return data.slice();
+  }
+
+  @Override
+  public ByteBuffer read(Path path) throws IOException {
+    return SignatureReader.map(path);
   }
 }
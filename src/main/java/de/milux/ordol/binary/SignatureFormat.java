@@ -0,0 +1,135 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+/**
+ * Constants describing the binary signature format. A signature file starts with a fixed header of
+ * {@link #HEADER_INTS} ints, followed by the string table and one section of fixed-size int records
+ * per entity type:
+ *
+ * <pre>
+ * header   magic, version, counts of all sections, offsets of all sections
+ * strings  (stringCount + 1) int offsets into the UTF-8 data following them
+ * classes  name, libSuperClass, appSuperClass, interfacesStart, interfacesCount,
+ *          methodsStart, methodsCount
+ * methods  name, ctph, idxInClass, fixTypesStart, fixTypesCount, refsStart, refsCount,
+ *          blocksStart, blocksCount, succsStart, succsCount
+ * blocks   unitsStart, unitsCount
+ * units    instr, refTypesStart, refTypesCount, flags, refMethodClass, refMethodIdx
+ * succs    fromBlock, toBlock (block indices relative to the method)
+ * pool     string indices referenced by the *Start/*Count pairs of string lists
+ * kgrams   directory of (K, section offset) pairs, each section holding (start, count) pairs
+ *          for all methods and then all classes, followed by the size of its hash pool and the
+ *          pool itself
+ * </pre>
+ *
+ * <p>The k-gram sections contain the sorted, distinct k-gram hashes of every method and class for
+ * a given K, so they need not be recomputed after loading. Version 1 signatures have no k-gram
+ * sections and a header of only {@link #HEADER_INTS_V1} ints.
+ *
+ * <p>All values are big-endian ints, strings are referenced by their index in the string table,
+ * null strings by {@link #NULL_IDX}.
+ */
+public final class SignatureFormat {
+  private SignatureFormat() {}
+
+  public static final String EXT = ".sig";
+  public static final int MAGIC = 0x4F524453; // "ORDS"
+  public static final int VERSION = 2;
+  public static final int NULL_IDX = -1;
+
+  /** Header layout (int indices) */
+  static final int H_MAGIC = 0;
+  static final int H_VERSION = 1;
+  static final int H_STRING_COUNT = 2;
+  static final int H_CLASS_COUNT = 3;
+  static final int H_METHOD_COUNT = 4;
+  static final int H_BLOCK_COUNT = 5;
+  static final int H_UNIT_COUNT = 6;
+  static final int H_SUCC_COUNT = 7;
+  static final int H_POOL_SIZE = 8;
+  static final int H_STRINGS_OFFSET = 9;
+  static final int H_CLASSES_OFFSET = 10;
+  static final int H_METHODS_OFFSET = 11;
+  static final int H_BLOCKS_OFFSET = 12;
+  static final int H_UNITS_OFFSET = 13;
+  static final int H_SUCCS_OFFSET = 14;
+  static final int H_POOL_OFFSET = 15;
+  static final int HEADER_INTS_V1 = 16;
+  static final int H_KGRAM_SECTIONS = 16;
+  static final int H_KGRAMS_OFFSET = 17;
+  static final int HEADER_INTS = 18;
+
+  /** Class record layout */
+  static final int C_NAME = 0;
+  static final int C_LIB_SUPER = 1;
+  static final int C_APP_SUPER = 2;
+  static final int C_IFACES_START = 3;
+  static final int C_IFACES_COUNT = 4;
+  static final int C_METHODS_START = 5;
+  static final int C_METHODS_COUNT = 6;
+  static final int CLASS_INTS = 7;
+
+  /** Method record layout */
+  static final int M_NAME = 0;
+  static final int M_CTPH = 1;
+  static final int M_IDX = 2;
+  static final int M_FIX_TYPES_START = 3;
+  static final int M_FIX_TYPES_COUNT = 4;
+  static final int M_REFS_START = 5;
+  static final int M_REFS_COUNT = 6;
+  static final int M_BLOCKS_START = 7;
+  static final int M_BLOCKS_COUNT = 8;
+  static final int M_SUCCS_START = 9;
+  static final int M_SUCCS_COUNT = 10;
+  static final int METHOD_INTS = 11;
+
+  /** Block record layout */
+  static final int B_UNITS_START = 0;
+  static final int B_UNITS_COUNT = 1;
+  static final int BLOCK_INTS = 2;
+
+  /** Unit record layout */
+  static final int U_INSTR = 0;
+  static final int U_REF_TYPES_START = 1;
+  static final int U_REF_TYPES_COUNT = 2;
+  static final int U_FLAGS = 3;
+  static final int U_REF_METHOD_CLASS = 4;
+  static final int U_REF_METHOD_IDX = 5;
+  static final int UNIT_INTS = 6;
+
+  /** Successor record layout */
+  static final int S_FROM = 0;
+  static final int S_TO = 1;
+  static final int SUCC_INTS = 2;
+
+  /** K-gram directory entry layout */
+  static final int K_K = 0;
+  static final int K_OFFSET = 1;
+  static final int KGRAM_DIR_INTS = 2;
+
+  /** K-gram section entry layout */
+  static final int KE_START = 0;
+  static final int KE_COUNT = 1;
+  static final int KGRAM_ENTRY_INTS = 2;
+
+  /** Unit flags */
+  static final int F_HAS_INVOCATION = 1;
+  static final int F_HAS_REF_METHOD = 2;
+}
@@ -0,0 +1,319 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import static de.milux.ordol.binary.SignatureFormat.*;
+
+import de.milux.ordol.Constants;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.MethodData;
+import de.milux.ordol.data.UnitData;
+import io.vavr.Tuple;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads ClassData objects from a binary signature (see {@link SignatureFormat}). All records are
+ * accessed with absolute reads directly on the (usually memory-mapped) buffer, nothing is inflated
+ * or copied. Strings are decoded and interned on first access only. If the signature contains
+ * k-gram hashes for the current K, they are attached to the returned methods and classes.
+ */
+public class SignatureReader {
+
+  private final ByteBuffer buf;
+  private final int stringCount;
+  private final int classCount;
+  private final int stringsOffset;
+  private final int stringDataOffset;
+  private final int classesOffset;
+  private final int methodsOffset;
+  private final int blocksOffset;
+  private final int unitsOffset;
+  private final int succsOffset;
+  private final int poolOffset;
+  private final int methodCount;
+  /** Offset of the k-gram section for the current K, -1 if there is none */
+  private final int kGramsOffset;
+  private final int kGramPoolOffset;
+  private final String[] stringCache;
+
+  public static MappedByteBuffer map(Path path) throws IOException {
+    try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+      return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+    }
+  }
+
+  public static List<ClassData> read(Path path) throws IOException {
+    return new SignatureReader(map(path)).readAll();
+  }
+
+  public static List<ClassData> readHeaders(Path path) throws IOException {
+    return new SignatureReader(map(path)).readHeaders();
+  }
+
+  public SignatureReader(ByteBuffer buf) throws IOException {
+    this.buf = buf;
+    if (buf.capacity() < HEADER_INTS_V1 * 4 || header(H_MAGIC) != MAGIC) {
+      throw new IOException("Not a binary signature");
+    }
+    int version = header(H_VERSION);
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported signature version " + version);
+    }
+    this.stringCount = header(H_STRING_COUNT);
+    this.classCount = header(H_CLASS_COUNT);
+    this.stringsOffset = header(H_STRINGS_OFFSET);
+    this.stringDataOffset = stringsOffset + (stringCount + 1) * 4;
+    this.classesOffset = header(H_CLASSES_OFFSET);
+    this.methodsOffset = header(H_METHODS_OFFSET);
+    this.blocksOffset = header(H_BLOCKS_OFFSET);
+    this.unitsOffset = header(H_UNITS_OFFSET);
+    this.succsOffset = header(H_SUCCS_OFFSET);
+    this.poolOffset = header(H_POOL_OFFSET);
+    this.methodCount = header(H_METHOD_COUNT);
+    this.stringCache = new String[stringCount];
+    int kOffset = -1;
+    if (version >= 2) {
+      int dirOffset = header(H_KGRAMS_OFFSET);
+      for (int i = 0; i < header(H_KGRAM_SECTIONS); i++) {
+        if (record(dirOffset, KGRAM_DIR_INTS, i, K_K) == Constants.K) {
+          kOffset = record(dirOffset, KGRAM_DIR_INTS, i, K_OFFSET);
+          break;
+        }
+      }
+    }
+    this.kGramsOffset = kOffset;
+    // the hash pool follows the entries of all methods and classes and its size
+    this.kGramPoolOffset = kOffset + ((methodCount + classCount) * KGRAM_ENTRY_INTS + 1) * 4;
+  }
+
+  private int header(int field) {
+    return buf.getInt(field * 4);
+  }
+
+  private int record(int sectionOffset, int recordInts, int idx, int field) {
+    return buf.getInt(sectionOffset + (idx * recordInts + field) * 4);
+  }
+
+  public int getClassCount() {
+    return classCount;
+  }
+
+  public String getString(int idx) {
+    if (idx == NULL_IDX) {
+      return null;
+    }
+    String s = stringCache[idx];
+    if (s == null) {
+      int start = buf.getInt(stringsOffset + idx * 4);
+      int end = buf.getInt(stringsOffset + (idx + 1) * 4);
+      byte[] b = new byte[end - start];
+      for (int i = 0; i < b.length; i++) {
+        b[i] = buf.get(stringDataOffset + start + i);
+      }
+      s = new String(b, StandardCharsets.UTF_8).intern();
+      // benign race, all threads produce the same interned instance
+      stringCache[idx] = s;
+    }
+    return s;
+  }
+
+  private String[] getStrings(int poolStart, int count) {
+    String[] strings = new String[count];
+    for (int i = 0; i < count; i++) {
+      strings[i] = getString(buf.getInt(poolOffset + (poolStart + i) * 4));
+    }
+    return strings;
+  }
+
+  /** @return Whether this signature contains k-gram hashes for the current K */
+  public boolean hasKGramHashes() {
+    return kGramsOffset >= 0;
+  }
+
+  /**
+   * Reads the k-gram hash array of the given entry of the k-gram section.
+   *
+   * @param entry Method index, or method count + class index
+   */
+  private int[] getKGramHashes(int entry) {
+    int start = record(kGramsOffset, KGRAM_ENTRY_INTS, entry, KE_START);
+    int[] hashes = new int[record(kGramsOffset, KGRAM_ENTRY_INTS, entry, KE_COUNT)];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = buf.getInt(kGramPoolOffset + (start + i) * 4);
+    }
+    return hashes;
+  }
+
+  public List<ClassData> readAll() {
+    List<ClassData> cdList = new ArrayList<>(classCount);
+    for (int c = 0; c < classCount; c++) {
+      cdList.add(readClass(c));
+    }
+    return cdList;
+  }
+
+  /**
+   * Reads the headers of all classes, see {@link #readClassHeader(int)}.
+   *
+   * @return List of classes whose methods are read on first access
+   */
+  public List<ClassData> readHeaders() {
+    List<ClassData> cdList = new ArrayList<>(classCount);
+    for (int c = 0; c < classCount; c++) {
+      cdList.add(readClassHeader(c));
+    }
+    return cdList;
+  }
+
+  public ClassData readClass(int c) {
+    ClassData cd =
+        new ClassData(
+            getString(record(classesOffset, CLASS_INTS, c, C_NAME)),
+            readMethods(c),
+            getString(record(classesOffset, CLASS_INTS, c, C_LIB_SUPER)),
+            getString(record(classesOffset, CLASS_INTS, c, C_APP_SUPER)),
+            readInterfaces(c));
+    if (hasKGramHashes()) {
+      cd.setKGramHashArray(getKGramHashes(methodCount + c));
+    }
+    return cd;
+  }
+
+  /**
+   * Reads the header of a class only. The methods, blocks and units are read from the signature
+   * when the methods of the returned class are first accessed, so the buffer must stay valid.
+   *
+   * @param c The index of the class
+   * @return The class with its methods loaded on demand
+   */
+  public ClassData readClassHeader(int c) {
+    int mStart = record(classesOffset, CLASS_INTS, c, C_METHODS_START);
+    int mCount = record(classesOffset, CLASS_INTS, c, C_METHODS_COUNT);
+    // the weight is the number of units, blocks of a class are stored contiguously
+    long weight = 0L;
+    if (mCount > 0) {
+      int last = mStart + mCount - 1;
+      int bEnd =
+          record(methodsOffset, METHOD_INTS, last, M_BLOCKS_START)
+              + record(methodsOffset, METHOD_INTS, last, M_BLOCKS_COUNT);
+      for (int b = record(methodsOffset, METHOD_INTS, mStart, M_BLOCKS_START); b < bEnd; b++) {
+        weight += record(blocksOffset, BLOCK_INTS, b, B_UNITS_COUNT);
+      }
+    }
+    ClassData cd =
+        new ClassData(
+            getString(record(classesOffset, CLASS_INTS, c, C_NAME)),
+            getString(record(classesOffset, CLASS_INTS, c, C_LIB_SUPER)),
+            getString(record(classesOffset, CLASS_INTS, c, C_APP_SUPER)),
+            readInterfaces(c),
+            mCount,
+            weight,
+            () -> readMethods(c));
+    if (hasKGramHashes()) {
+      cd.setKGramHashArray(getKGramHashes(methodCount + c));
+    }
+    return cd;
+  }
+
+  private Set<String> readInterfaces(int c) {
+    return new HashSet<>(
+        Arrays.asList(
+            getStrings(
+                record(classesOffset, CLASS_INTS, c, C_IFACES_START),
+                record(classesOffset, CLASS_INTS, c, C_IFACES_COUNT))));
+  }
+
+  private List<MethodData> readMethods(int c) {
+    int mStart = record(classesOffset, CLASS_INTS, c, C_METHODS_START);
+    int mCount = record(classesOffset, CLASS_INTS, c, C_METHODS_COUNT);
+    List<MethodData> methods = new ArrayList<>(mCount);
+    for (int m = mStart; m < mStart + mCount; m++) {
+      methods.add(readMethod(m));
+    }
+    return methods;
+  }
+
+  private MethodData readMethod(int m) {
+    int bStart = record(methodsOffset, METHOD_INTS, m, M_BLOCKS_START);
+    int bCount = record(methodsOffset, METHOD_INTS, m, M_BLOCKS_COUNT);
+    List<List<UnitData>> blocks = new ArrayList<>(bCount);
+    for (int b = bStart; b < bStart + bCount; b++) {
+      int uStart = record(blocksOffset, BLOCK_INTS, b, B_UNITS_START);
+      int uCount = record(blocksOffset, BLOCK_INTS, b, B_UNITS_COUNT);
+      List<UnitData> block = new ArrayList<>(uCount);
+      for (int u = uStart; u < uStart + uCount; u++) {
+        block.add(readUnit(u));
+      }
+      blocks.add(block);
+    }
+    int sStart = record(methodsOffset, METHOD_INTS, m, M_SUCCS_START);
+    int sCount = record(methodsOffset, METHOD_INTS, m, M_SUCCS_COUNT);
+    Map<Integer, Set<Integer>> blockSuccs = new HashMap<>();
+    for (int s = sStart; s < sStart + sCount; s++) {
+      blockSuccs
+          .computeIfAbsent(record(succsOffset, SUCC_INTS, s, S_FROM), k -> new HashSet<>())
+          .add(record(succsOffset, SUCC_INTS, s, S_TO));
+    }
+    MethodData md =
+        new MethodData(
+            getString(record(methodsOffset, METHOD_INTS, m, M_NAME)),
+            Arrays.asList(
+                getStrings(
+                    record(methodsOffset, METHOD_INTS, m, M_FIX_TYPES_START),
+                    record(methodsOffset, METHOD_INTS, m, M_FIX_TYPES_COUNT))),
+            blocks,
+            blockSuccs,
+            getString(record(methodsOffset, METHOD_INTS, m, M_CTPH)),
+            Arrays.asList(
+                getStrings(
+                    record(methodsOffset, METHOD_INTS, m, M_REFS_START),
+                    record(methodsOffset, METHOD_INTS, m, M_REFS_COUNT))),
+            record(methodsOffset, METHOD_INTS, m, M_IDX));
+    if (hasKGramHashes()) {
+      md.setKGramHashArray(getKGramHashes(m));
+    }
+    return md;
+  }
+
+  private UnitData readUnit(int u) {
+    String instr = getString(record(unitsOffset, UNIT_INTS, u, U_INSTR));
+    String[] refTypes =
+        getStrings(
+            record(unitsOffset, UNIT_INTS, u, U_REF_TYPES_START),
+            record(unitsOffset, UNIT_INTS, u, U_REF_TYPES_COUNT));
+    int flags = record(unitsOffset, UNIT_INTS, u, U_FLAGS);
+    if ((flags & F_HAS_REF_METHOD) != 0) {
+      return new UnitData(
+          instr,
+          refTypes,
+          Tuple.of(
+              getString(record(unitsOffset, UNIT_INTS, u, U_REF_METHOD_CLASS)),
+              record(unitsOffset, UNIT_INTS, u, U_REF_METHOD_IDX)));
+    } else {
+      return new UnitData(instr, refTypes, (flags & F_HAS_INVOCATION) != 0);
+    }
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.binary;
+
+import static de.milux.ordol.binary.SignatureFormat.*;
+
+import de.milux.ordol.Constants;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.MethodData;
+import de.milux.ordol.data.UnitData;
+import de.milux.ordol.helpers.Utils;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Serializes ClassData objects to the binary signature format described in {@link
+ * SignatureFormat}. Strings are deduplicated over the whole signature. For each configured K, the
+ * sorted k-gram hashes of all methods and classes are stored as well.
+ */
+public class SignatureWriter {
+
+  private final Map<String, Integer> strings = new LinkedHashMap<>();
+  private final IntSection classes = new IntSection();
+  private final IntSection methods = new IntSection();
+  private final IntSection blocks = new IntSection();
+  private final IntSection units = new IntSection();
+  private final IntSection succs = new IntSection();
+  private final IntSection pool = new IntSection();
+  private final KGramSection[] kGramSections;
+  private int classCount = 0;
+
+  /** Creates a writer storing k-gram hashes for the current K */
+  public SignatureWriter() {
+    this(Constants.K);
+  }
+
+  /**
+   * Creates a writer storing k-gram hashes for each of the given K values.
+   *
+   * @param kValues The k-gram lengths to store hashes for, may be empty
+   */
+  public SignatureWriter(int... kValues) {
+    this.kGramSections = new KGramSection[kValues.length];
+    for (int i = 0; i < kValues.length; i++) {
+      this.kGramSections[i] = new KGramSection(kValues[i]);
+    }
+  }
+
+  public static void write(Collection<ClassData> cdList, Path path) throws IOException {
+    new SignatureWriter().addAll(cdList).write(path);
+  }
+
+  public SignatureWriter addAll(Collection<ClassData> cdList) {
+    cdList.forEach(this::add);
+    return this;
+  }
+
+  /**
+   * Appends a class record to this signature.
+   *
+   * @param cd The class to be added
+   * @return The index of the class record in the signature
+   */
+  public int add(ClassData cd) {
+    classes.add(string(cd.name));
+    classes.add(string(cd.libSuperClass));
+    classes.add(string(cd.appSuperClass));
+    classes.add(pool.size);
+    classes.add(cd.interfaces.size());
+    cd.interfaces.stream().sorted().forEach(i -> pool.add(string(i)));
+    classes.add(methods.size / METHOD_INTS);
+    classes.add(cd.size());
+    cd.forEach(this::addMethod);
+    for (KGramSection ks : kGramSections) {
+      ks.addClass(cd);
+    }
+    return classCount++;
+  }
+
+  private void addMethod(MethodData md) {
+    methods.add(string(md.name));
+    methods.add(string(md.ctph));
+    methods.add(md.idxInClass);
+    addStringList(methods, md.fixTypes);
+    addStringList(methods, md.refs);
+    methods.add(blocks.size / BLOCK_INTS);
+    methods.add(md.blocks.size());
+    for (List<UnitData> block : md.blocks) {
+      blocks.add(units.size / UNIT_INTS);
+      blocks.add(block.size());
+      block.forEach(this::addUnit);
+    }
+    methods.add(succs.size / SUCC_INTS);
+    int succStart = succs.size;
+    new TreeMap<>(md.blockSuccs)
+        .forEach(
+            (from, tos) ->
+                new TreeSet<>(tos)
+                    .forEach(
+                        to -> {
+                          succs.add(from);
+                          succs.add(to);
+                        }));
+    methods.add((succs.size - succStart) / SUCC_INTS);
+    for (KGramSection ks : kGramSections) {
+      ks.addMethod(md);
+    }
+  }
+
+  private void addUnit(UnitData ud) {
+    units.add(string(ud.instr));
+    units.add(pool.size);
+    units.add(ud.refTypes.length);
+    for (String refType : ud.refTypes) {
+      pool.add(string(refType));
+    }
+    int flags = ud.hasInvocation ? F_HAS_INVOCATION : 0;
+    if (ud.refMethod != null) {
+      units.add(flags | F_HAS_REF_METHOD);
+      units.add(string(ud.refMethod._1));
+      units.add(ud.refMethod._2);
+    } else {
+      units.add(flags);
+      units.add(NULL_IDX);
+      units.add(0);
+    }
+  }
+
+  private void addStringList(IntSection section, List<String> list) {
+    section.add(pool.size);
+    section.add(list.size());
+    list.forEach(s -> pool.add(string(s)));
+  }
+
+  private int string(String s) {
+    if (s == null) {
+      return NULL_IDX;
+    }
+    return strings.computeIfAbsent(s, k -> strings.size());
+  }
+
+  public byte[] toByteArray() {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try {
+      writeTo(bos);
+    } catch (IOException ioe) {
+      // cannot happen for in-memory streams
+      throw new RuntimeException(ioe);
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * Writes the signature to the given stream, which is not closed.
+   *
+   * @param os The stream to write to
+   */
+  public void writeTo(OutputStream os) throws IOException {
+    // encode string table
+    ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+    IntSection stringOffsets = new IntSection();
+    for (String s : strings.keySet()) {
+      stringOffsets.add(stringData.size());
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      stringData.write(b, 0, b.length);
+    }
+    stringOffsets.add(stringData.size());
+    // align the record sections to 4 bytes
+    while (stringData.size() % 4 != 0) {
+      stringData.write(0);
+    }
+    int[] header = new int[HEADER_INTS];
+    header[H_MAGIC] = MAGIC;
+    header[H_VERSION] = VERSION;
+    header[H_STRING_COUNT] = strings.size();
+    header[H_CLASS_COUNT] = classCount;
+    header[H_METHOD_COUNT] = methods.size / METHOD_INTS;
+    header[H_BLOCK_COUNT] = blocks.size / BLOCK_INTS;
+    header[H_UNIT_COUNT] = units.size / UNIT_INTS;
+    header[H_SUCC_COUNT] = succs.size / SUCC_INTS;
+    header[H_POOL_SIZE] = pool.size;
+    int offset = HEADER_INTS * 4;
+    header[H_STRINGS_OFFSET] = offset;
+    offset += stringOffsets.size * 4 + stringData.size();
+    header[H_CLASSES_OFFSET] = offset;
+    offset += classes.size * 4;
+    header[H_METHODS_OFFSET] = offset;
+    offset += methods.size * 4;
+    header[H_BLOCKS_OFFSET] = offset;
+    offset += blocks.size * 4;
+    header[H_UNITS_OFFSET] = offset;
+    offset += units.size * 4;
+    header[H_SUCCS_OFFSET] = offset;
+    offset += succs.size * 4;
+    header[H_POOL_OFFSET] = offset;
+    offset += pool.size * 4;
+    header[H_KGRAM_SECTIONS] = kGramSections.length;
+    header[H_KGRAMS_OFFSET] = offset;
+    offset += kGramSections.length * KGRAM_DIR_INTS * 4;
+    int[] kGramOffsets = new int[kGramSections.length];
+    for (int i = 0; i < kGramSections.length; i++) {
+      kGramOffsets[i] = offset;
+      offset += kGramSections[i].byteSize();
+    }
+    if (offset < 0) {
+      throw new IOException("Signature exceeds the maximum size of 2 GB");
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+    for (int h : header) {
+      out.writeInt(h);
+    }
+    stringOffsets.writeTo(out);
+    stringData.writeTo(out);
+    classes.writeTo(out);
+    methods.writeTo(out);
+    blocks.writeTo(out);
+    units.writeTo(out);
+    succs.writeTo(out);
+    pool.writeTo(out);
+    for (int i = 0; i < kGramSections.length; i++) {
+      out.writeInt(kGramSections[i].k);
+      out.writeInt(kGramOffsets[i]);
+    }
+    for (KGramSection ks : kGramSections) {
+      ks.writeTo(out);
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the signature to the given path. The data is written to a unique temporary file first,
+   * which atomically replaces the target afterwards, so concurrent readers never map a partially
+   * written file, and concurrent writers of the same path do not share a temporary file.
+   *
+   * @param path The target path of the signature file
+   */
+  public void write(Path path) throws IOException {
+    Path tmpPath = Utils.getTempSibling(path);
+    try {
+      Files.write(tmpPath, toByteArray(), StandardOpenOption.CREATE_NEW);
+      Files.move(
+          tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmpPath);
+    }
+  }
+
+  /** Sorted k-gram hashes of all methods and classes for one K */
+  private static class KGramSection {
+    private final int k;
+    private final IntSection methodEntries = new IntSection();
+    private final IntSection classEntries = new IntSection();
+    private final IntSection hashes = new IntSection();
+    private final List<int[]> classMethodHashes = new ArrayList<>();
+
+    KGramSection(int k) {
+      this.k = k;
+    }
+
+    void addMethod(MethodData md) {
+      // reuse the cached hashes if they were made for the same K
+      int[] mh = k == Constants.K ? md.getKGramHashArray() : md.computeKGramHashArray(k);
+      classMethodHashes.add(mh);
+      add(methodEntries, mh);
+    }
+
+    void addClass(ClassData cd) {
+      int[] ch;
+      if (k == Constants.K) {
+        ch = cd.getKGramHashArray();
+      } else {
+        ch = classMethodHashes.isEmpty() ? new int[0] : Utils.unionSorted(classMethodHashes);
+      }
+      classMethodHashes.clear();
+      add(classEntries, ch);
+    }
+
+    private void add(IntSection entries, int[] h) {
+      entries.add(hashes.size);
+      entries.add(h.length);
+      for (int v : h) {
+        hashes.add(v);
+      }
+    }
+
+    int byteSize() {
+      return (methodEntries.size + classEntries.size + 1 + hashes.size) * 4;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      methodEntries.writeTo(out);
+      classEntries.writeTo(out);
+      out.writeInt(hashes.size);
+      hashes.writeTo(out);
+    }
+  }
+
+  /** Growable int array for one section of the signature */
+  private static class IntSection {
+    private int[] data = new int[256];
+    private int size = 0;
+
+    void add(int v) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, size * 2);
+      }
+      data[size++] = v;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      for (int i = 0; i < size; i++) {
+        out.writeInt(data[i]);
+      }
+    }
+  }
+}
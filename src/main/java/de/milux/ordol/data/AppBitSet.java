@@ -0,0 +1,176 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import de.milux.ordol.helpers.Utils;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The bitset of the k-gram hashes of the app classes, see {@link Utils#makeBitSet(int[], int)},
+ * which is updated when classes are removed instead of being rebuilt from the remaining classes. A
+ * reference count per hash tracks the classes containing it. When the last one is removed, the
+ * hash is deleted from the linear probing table by moving following hashes back towards their home
+ * bit. This sets the same bits as a table built from the remaining hashes, since the set bits of
+ * linear probing only depend on the set of hashes. The hash occupying each bit is kept in a small
+ * open addressing table keyed by bit. A hash only ever moves to a bit that was set before, so the
+ * keys of this table are fixed after construction and only their values are updated.
+ */
+public class AppBitSet {
+  private final int prime;
+  /** All distinct hashes of the app classes, ascending */
+  private final int[] hashes;
+  /** The number of remaining classes containing each hash */
+  private final int[] refCounts;
+  /** The bit of each hash, or -1 */
+  private final int[] bitOfHash;
+  /** The keys of the table of the hash occupying each bit (-1 for empty slots) */
+  private final int[] slotBits;
+  /** The index of the hash occupying the bit of each slot, undefined for clear bits */
+  private final int[] slotHashes;
+
+  private final int slotShift;
+
+  private final BitSet bits = new BitSet();
+  private int size = 0;
+
+  /**
+   * @param classHashes The k-gram hashes of each class, see {@link ClassData#getKGramHashArray()}
+   * @param prime The size of the bitset
+   */
+  public AppBitSet(List<int[]> classHashes, int prime) {
+    this.prime = prime;
+    int[] all = Utils.unionSorted(classHashes);
+    this.hashes = all;
+    this.refCounts = new int[all.length];
+    this.bitOfHash = new int[all.length];
+    int slots = 16;
+    while (slots < 2 * all.length) {
+      slots <<= 1;
+    }
+    this.slotBits = new int[slots];
+    this.slotHashes = new int[slots];
+    this.slotShift = Integer.numberOfLeadingZeros(slots) + 1;
+    Arrays.fill(slotBits, -1);
+    for (int[] ch : classHashes) {
+      for (int h : ch) {
+        refCounts[Arrays.binarySearch(all, h)]++;
+      }
+    }
+    Arrays.fill(bitOfHash, -1);
+    for (int i = 0; i < all.length && size < prime; i++) {
+      int bit = home(all[i]);
+      while (bits.get(bit)) {
+        bit = (bit + 1) % prime;
+      }
+      bits.set(bit);
+      bitOfHash[i] = bit;
+      setHashOfBit(bit, i);
+      size++;
+    }
+  }
+
+  private int home(int h) {
+    return (int) (Integer.toUnsignedLong(h) % prime);
+  }
+
+  /** @return The slot of the given bit, or the empty slot where it would be inserted */
+  private int slot(int bit) {
+    int s = (bit * 0x9E3779B9) >>> slotShift;
+    while (slotBits[s] != bit && slotBits[s] >= 0) {
+      s = (s + 1) & (slotBits.length - 1);
+    }
+    return s;
+  }
+
+  private void setHashOfBit(int bit, int idx) {
+    int s = slot(bit);
+    slotBits[s] = bit;
+    slotHashes[s] = idx;
+  }
+
+  /**
+   * Removes a class. Each hash no other remaining class contains is deleted, which clears one bit.
+   *
+   * @param classHashes The k-gram hashes of the class, as passed to the constructor
+   * @param clearedBits Receives the bits cleared by the removal
+   */
+  public void remove(int[] classHashes, IntConsumer clearedBits) {
+    for (int h : classHashes) {
+      int idx = Arrays.binarySearch(hashes, h);
+      if (idx < 0 || refCounts[idx] <= 0) {
+        throw new IllegalArgumentException("Hash " + h + " has not been added");
+      }
+      if (--refCounts[idx] == 0 && bitOfHash[idx] >= 0) {
+        clearedBits.accept(delete(idx));
+      }
+    }
+  }
+
+  /**
+   * Deletes a hash from the probing table, moving each following hash of the cluster into the gap
+   * unless this would place it before its home bit.
+   *
+   * @return The bit that finally became free
+   */
+  private int delete(int idx) {
+    int gap = bitOfHash[idx];
+    bitOfHash[idx] = -1;
+    bits.clear(gap);
+    size--;
+    for (int bit = (gap + 1) % prime; bits.get(bit); bit = (bit + 1) % prime) {
+      int next = slotHashes[slot(bit)];
+      int home = home(hashes[next]);
+      // the hash may move if its home is not within (gap;bit], cyclically
+      boolean movable = gap <= bit ? home <= gap || home > bit : home <= gap && home > bit;
+      if (movable) {
+        setHashOfBit(gap, next);
+        bitOfHash[next] = gap;
+        bits.set(gap);
+        bits.clear(bit);
+        gap = bit;
+      }
+    }
+    return gap;
+  }
+
+  /** @return The bits of the remaining hashes, must not be modified */
+  public BitSet getBits() {
+    return bits;
+  }
+
+  /** @return The number of set bits */
+  public int cardinality() {
+    return size;
+  }
+
+  /** @return The distinct hashes of the remaining classes, ascending */
+  public int[] getHashes() {
+    int[] remaining = new int[hashes.length];
+    int n = 0;
+    for (int i = 0; i < hashes.length; i++) {
+      if (refCounts[i] > 0) {
+        remaining[n++] = hashes[i];
+      }
+    }
+    return Arrays.copyOf(remaining, n);
+  }
+}
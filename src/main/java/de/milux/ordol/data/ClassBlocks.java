@@ -0,0 +1,136 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import static de.milux.ordol.Constants.ALLOW_ADDITIONAL_APP_CLASS_METHODS;
+
+import de.milux.ordol.algo.ApproxMethodMatching;
+import de.milux.ordol.algo.MethodMatching;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks the app classes by the hard constraints of the class matching, so that a library class
+ * is only compared with the app classes it can match at all. The app classes are bucketed by their
+ * library superclass, and each bucket is sorted by the number of methods.
+ */
+public class ClassBlocks {
+  private static final int[] EMPTY = new int[0];
+
+  private final Block all;
+  private final Map<String, Block> bySuperClass = new HashMap<>();
+
+  /** App class indices sorted by the number of methods, and the number of methods of each */
+  private static final class Block {
+    private final int[] indices;
+    private final int[] sizes;
+
+    private Block(List<ClassData> classes, int[] indices) {
+      this.indices = indices;
+      this.sizes = Arrays.stream(indices).map(i -> classes.get(i).size()).toArray();
+    }
+
+    /** @return The ascending indices of the classes with min <= size <= max */
+    private int[] getRange(int min, int max) {
+      int from = lowerBound(min);
+      int to = max == Integer.MAX_VALUE ? sizes.length : lowerBound(max + 1);
+      if (from >= to) {
+        return EMPTY;
+      }
+      int[] range = Arrays.copyOfRange(indices, from, to);
+      Arrays.sort(range);
+      return range;
+    }
+
+    /** @return The first position with a size >= the given size */
+    private int lowerBound(int size) {
+      int lo = 0;
+      int hi = sizes.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (sizes[mid] < size) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+  }
+
+  /** @param appClasses The app classes, the candidates are indices into this list */
+  public ClassBlocks(List<ClassData> appClasses) {
+    Comparator<Integer> bySize = Comparator.comparingInt(i -> appClasses.get(i).size());
+    Map<String, List<Integer>> buckets = new HashMap<>();
+    List<Integer> indices = new ArrayList<>(appClasses.size());
+    for (int i = 0; i < appClasses.size(); i++) {
+      indices.add(i);
+      String superClass = appClasses.get(i).libSuperClass;
+      if (superClass != null) {
+        buckets.computeIfAbsent(superClass, k -> new ArrayList<>()).add(i);
+      }
+    }
+    indices.sort(bySize);
+    all = new Block(appClasses, indices.stream().mapToInt(Integer::intValue).toArray());
+    buckets.forEach(
+        (superClass, bucket) -> {
+          bucket.sort(bySize);
+          bySuperClass.put(
+              superClass,
+              new Block(appClasses, bucket.stream().mapToInt(Integer::intValue).toArray()));
+        });
+  }
+
+  /**
+   * Returns the app classes that may have a non-zero similarity to the library class in an {@link
+   * ApproxMethodMatching}: both classes have methods, the app class has the same library
+   * superclass (if the library class has one, see {@link MethodMatching}), and it has no more
+   * methods than the library class (unless ALLOW_ADDITIONAL_APP_CLASS_METHODS).
+   *
+   * @return The ascending indices of the candidate app classes
+   */
+  public int[] getCandidates(ClassData libClass) {
+    if (libClass.isEmpty()) {
+      return EMPTY;
+    }
+    Block block = libClass.libSuperClass == null ? all : bySuperClass.get(libClass.libSuperClass);
+    if (block == null) {
+      return EMPTY;
+    }
+    return block.getRange(1, getMaxSize(libClass));
+  }
+
+  /**
+   * Returns the app classes that have no more methods than the library class (unless
+   * ALLOW_ADDITIONAL_APP_CLASS_METHODS), the only constraint of the type-graph rematching.
+   *
+   * @return The ascending indices of the candidate app classes
+   */
+  public int[] getSizeCandidates(ClassData libClass) {
+    return all.getRange(0, getMaxSize(libClass));
+  }
+
+  private static int getMaxSize(ClassData libClass) {
+    return ALLOW_ADDITIONAL_APP_CLASS_METHODS ? Integer.MAX_VALUE : libClass.size();
+  }
+}
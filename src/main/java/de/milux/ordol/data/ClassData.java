@@ -21,6 +21,7 @@ package de.milux.ordol.data;
 import de.milux.ordol.helpers.IndexedList;
 import de.milux.ordol.helpers.Utils;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import soot.SootClass;
 
@@ -32,9 +33,12 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
   public final String libSuperClass;
   public final String appSuperClass;
   public final Set<String> interfaces;
-  public final MethodData[] methodDataArray;
+  private volatile MethodData[] methodDataArray;
+  private transient Supplier<List<MethodData>> methodLoader;
+  private final transient int methodCount;
   public final transient long weight;
-  private transient BitSet[] bitSets;
+  private transient volatile int[] kGramHashArray;
+  private transient long[][] bitSets;
   private transient int hashBitCount = -1;
   private transient int hashPrimeIdx = -1;
 
@@ -50,6 +54,7 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
               }
             });
     this.methodDataArray = methods.toArray(new MethodData[0]);
+    this.methodCount = this.methodDataArray.length;
     this.name = c.getName().intern();
     // get the nearest super class in hierarchy which is a library class, or null if
     // java.lang.Object
@@ -82,6 +87,7 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
       String appSuperClass,
       Set<String> interfaces) {
     this.methodDataArray = methods.toArray(new MethodData[0]);
+    this.methodCount = this.methodDataArray.length;
     this.name = name;
     this.libSuperClass = libSuperClass;
     this.appSuperClass = appSuperClass;
@@ -89,6 +95,78 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
     this.weight = this.stream().mapToLong(m -> m.weight).sum();
   }
 
+  /**
+   * Creates a class header whose methods are loaded on first access. Everything the class-level
+   * prefilter needs (names, super types, interfaces, method count, weight and, if set, k-gram
+   * hashes) is available without loading the methods.
+   *
+   * @param methodCount The number of methods the loader returns
+   * @param weight The sum of the weights of all methods
+   * @param methodLoader Loads the methods of this class, called at most once
+   */
+  public ClassData(
+      String name,
+      String libSuperClass,
+      String appSuperClass,
+      Set<String> interfaces,
+      int methodCount,
+      long weight,
+      Supplier<List<MethodData>> methodLoader) {
+    this.methodLoader = methodLoader;
+    this.methodCount = methodCount;
+    this.name = name;
+    this.libSuperClass = libSuperClass;
+    this.appSuperClass = appSuperClass;
+    this.interfaces = Utils.emptyOrROSet(interfaces);
+    this.weight = weight;
+  }
+
+  private MethodData[] getMethodDataArray() {
+    MethodData[] methods = this.methodDataArray;
+    if (methods == null) {
+      synchronized (this) {
+        methods = this.methodDataArray;
+        if (methods == null) {
+          methods = methodLoader.get().toArray(new MethodData[0]);
+          this.methodDataArray = methods;
+          this.methodLoader = null;
+        }
+      }
+    }
+    return methods;
+  }
+
+  /** @return Whether the methods of this class are available without loading them */
+  public boolean isLoaded() {
+    return this.methodDataArray != null;
+  }
+
+  /**
+   * Returns the sorted, distinct k-gram hashes of all methods of this class for the current K.
+   *
+   * @return Sorted array of distinct k-gram hashes, must not be modified
+   */
+  public int[] getKGramHashArray() {
+    int[] hashes = this.kGramHashArray;
+    if (hashes == null) {
+      List<int[]> methodHashes = new ArrayList<>(this.size());
+      this.forEach(m -> methodHashes.add(m.getKGramHashArray()));
+      hashes = methodHashes.isEmpty() ? new int[0] : Utils.unionSorted(methodHashes);
+      // benign race, all threads compute equal arrays
+      this.kGramHashArray = hashes;
+    }
+    return hashes;
+  }
+
+  /**
+   * Sets the precomputed k-gram hashes of this class, e.g. as loaded from a binary signature.
+   *
+   * @param hashes Sorted array of distinct k-gram hashes for the current K
+   */
+  public void setKGramHashArray(int[] hashes) {
+    this.kGramHashArray = hashes;
+  }
+
   private void ensureBitSets() {
     if (this.hashPrimeIdx == -1) {
       synchronized (this) {
@@ -97,16 +175,15 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
           return;
         }
         // make bit hashes over all methods' k-grams in this class
-        Set<Integer> hashes = new HashSet<>();
-        this.forEach(m -> hashes.addAll(m.getKGramHashes()));
+        int[] hashes = getKGramHashArray();
         this.bitSets = Utils.makeBitSets(hashes);
-        this.hashBitCount = hashes.size();
-        this.hashPrimeIdx = Utils.getBitSetPrimeIdx(hashes.size());
+        this.hashBitCount = hashes.length;
+        this.hashPrimeIdx = Utils.getBitSetPrimeIdx(hashes.length);
       }
     }
   }
 
-  public BitSet[] getBitSets() {
+  public long[][] getBitSets() {
     ensureBitSets();
     return bitSets;
   }
@@ -123,12 +200,12 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
 
   @Override
   public MethodData get(int index) {
-    return this.methodDataArray[index];
+    return getMethodDataArray()[index];
   }
 
   @Override
   public int size() {
-    return this.methodDataArray.length;
+    return this.methodCount;
   }
 
   @Override
@@ -142,7 +219,8 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
   @Override
   public int hashCode() {
     if (hashValue == 0) {
-      this.hashValue = this.name.hashCode() ^ super.hashCode();
+      // must not depend on the methods, so it does not trigger loading them
+      this.hashValue = this.name.hashCode() ^ (31 * methodCount) ^ Long.hashCode(weight);
     }
     return hashValue;
   }
@@ -156,6 +234,7 @@ public class ClassData extends AbstractList<MethodData> implements Comparable<Cl
             && Objects.equals(this.libSuperClass, ((ClassData) o).libSuperClass)
             && Objects.equals(this.appSuperClass, ((ClassData) o).appSuperClass)
             && this.interfaces.equals(((ClassData) o).interfaces)
-            && Arrays.equals(this.methodDataArray, ((ClassData) o).methodDataArray));
+            && this.methodCount == ((ClassData) o).methodCount
+            && Arrays.equals(this.getMethodDataArray(), ((ClassData) o).getMethodDataArray()));
   }
 }
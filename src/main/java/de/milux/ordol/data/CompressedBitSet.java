@@ -0,0 +1,547 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import de.milux.ordol.helpers.Utils;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed bitmap in the style of Roaring bitmaps: the bit vector is split into chunks of 2^16
+ * bits, each non-empty chunk is stored in the smallest of three containers, a sorted array of the
+ * set bits, a plain bitmap, or a list of runs of set bits. Library bitsets populate a small
+ * fraction of the bit vector, so they consist mostly of array containers taking 2 bytes per set
+ * bit, instead of 1 MB for the whole bit vector. Instances are immutable.
+ */
+public final class CompressedBitSet {
+  public static final int MAGIC = 0x4F524452; // "ORDR"
+
+  private static final int ARRAY = 0;
+  private static final int BITMAP = 1;
+  private static final int RUN = 2;
+  /** The number of 64 bit words of a chunk */
+  private static final int CHUNK_WORDS = 1 << 10;
+  /** The largest array container, with more bits a bitmap container is smaller */
+  private static final int MAX_ARRAY_SIZE = 4096;
+
+  /** The high 16 bits of the bits in each container, ascending */
+  private final char[] keys;
+
+  private final Container[] containers;
+  private final int cardinality;
+
+  private CompressedBitSet(char[] keys, Container[] containers) {
+    this.keys = keys;
+    this.containers = containers;
+    int cardinality = 0;
+    for (Container c : containers) {
+      cardinality += c.cardinality;
+    }
+    this.cardinality = cardinality;
+  }
+
+  public static CompressedBitSet of(BitSet bitSet) {
+    return of(bitSet.toLongArray());
+  }
+
+  /** @param words The words of a bitset, see {@link BitSet#toLongArray()} */
+  public static CompressedBitSet of(long[] words) {
+    return of(words, false);
+  }
+
+  /**
+   * Creates a bitset with bitmap containers only, which is larger, but faster to intersect with
+   * array containers. This suits a bitset intersected with many others, like the app bitset.
+   */
+  public static CompressedBitSet ofBitmaps(BitSet bitSet) {
+    return of(bitSet.toLongArray(), true);
+  }
+
+  private static CompressedBitSet of(long[] words, boolean bitmapsOnly) {
+    List<Character> keys = new ArrayList<>();
+    List<Container> containers = new ArrayList<>();
+    for (int from = 0; from < words.length; from += CHUNK_WORDS) {
+      int to = Math.min(words.length, from + CHUNK_WORDS);
+      int cardinality = 0;
+      int runs = 0;
+      long prev = 0L;
+      for (int w = from; w < to; w++) {
+        cardinality += Long.bitCount(words[w]);
+        // count the bits starting a run, i.e. set bits whose predecessor is not set
+        runs += Long.bitCount(words[w] & ~((words[w] << 1) | (prev >>> 63)));
+        prev = words[w];
+      }
+      if (cardinality == 0) {
+        continue;
+      }
+      Container container;
+      if (bitmapsOnly) {
+        container =
+            new BitmapContainer(Arrays.copyOfRange(words, from, from + CHUNK_WORDS), cardinality);
+      } else if (4 * runs < Math.min(2 * cardinality, 8 * CHUNK_WORDS)) {
+        container = RunContainer.of(words, from, to, runs, cardinality);
+      } else if (cardinality <= MAX_ARRAY_SIZE) {
+        container = ArrayContainer.of(words, from, to, cardinality);
+      } else {
+        container =
+            new BitmapContainer(Arrays.copyOfRange(words, from, from + CHUNK_WORDS), cardinality);
+      }
+      keys.add((char) (from / CHUNK_WORDS));
+      containers.add(container);
+    }
+    char[] keyArray = new char[keys.size()];
+    for (int i = 0; i < keyArray.length; i++) {
+      keyArray[i] = keys.get(i);
+    }
+    return new CompressedBitSet(keyArray, containers.toArray(new Container[0]));
+  }
+
+  /** @return The number of set bits */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /** @return The number of bits set in both bitsets, without building their intersection */
+  public int andCardinality(CompressedBitSet other) {
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < keys.length && j < other.keys.length) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        count += andCardinality(containers[i++], other.containers[j++]);
+      }
+    }
+    return count;
+  }
+
+  /** Passes the index of each set bit to the consumer, in ascending order */
+  public void forEach(IntConsumer consumer) {
+    for (int i = 0; i < keys.length; i++) {
+      containers[i].forEach(keys[i] << 16, consumer);
+    }
+  }
+
+  public BitSet toBitSet() {
+    BitSet bitSet = new BitSet();
+    forEach(bitSet::set);
+    return bitSet;
+  }
+
+  /** @return The approximate number of bytes taken by the containers */
+  public long getSizeInBytes() {
+    long size = 2L * keys.length;
+    for (Container c : containers) {
+      size += c.getSizeInBytes();
+    }
+    return size;
+  }
+
+  public byte[] toByteArray() {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream((int) getSizeInBytes() + 12);
+    try (DataOutputStream out = new DataOutputStream(bos)) {
+      out.writeInt(MAGIC);
+      out.writeInt(cardinality);
+      out.writeInt(keys.length);
+      for (int i = 0; i < keys.length; i++) {
+        out.writeChar(keys[i]);
+        containers[i].write(out);
+      }
+    } catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+    return bos.toByteArray();
+  }
+
+  /** @return true if the buffer holds a compressed bitset, see {@link #toByteArray()} */
+  public static boolean isCompressedBitSet(ByteBuffer buf) {
+    return buf.remaining() >= 12
+        && buf.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(buf.position()) == MAGIC;
+  }
+
+  public static CompressedBitSet valueOf(ByteBuffer buf) {
+    if (!isCompressedBitSet(buf)) {
+      throw new IllegalArgumentException("Not a compressed bitset");
+    }
+    buf = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    buf.getInt();
+    int cardinality = buf.getInt();
+    char[] keys = new char[buf.getInt()];
+    Container[] containers = new Container[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = buf.getChar();
+      containers[i] = Container.read(buf);
+    }
+    CompressedBitSet bitSet = new CompressedBitSet(keys, containers);
+    if (bitSet.cardinality != cardinality) {
+      throw new IllegalArgumentException("Corrupt compressed bitset");
+    }
+    return bitSet;
+  }
+
+  private static int andCardinality(Container a, Container b) {
+    // order the pair by container type, halving the number of cases
+    if (a.getType() > b.getType()) {
+      Container tmp = a;
+      a = b;
+      b = tmp;
+    }
+    if (a instanceof ArrayContainer) {
+      char[] values = ((ArrayContainer) a).values;
+      if (b instanceof ArrayContainer) {
+        return arrayAndArray(values, ((ArrayContainer) b).values);
+      } else if (b instanceof BitmapContainer) {
+        long[] words = ((BitmapContainer) b).words;
+        int count = 0;
+        for (char v : values) {
+          count += (int) (words[v >>> 6] >>> v) & 1;
+        }
+        return count;
+      } else {
+        return arrayAndRuns(values, ((RunContainer) b).runs);
+      }
+    } else if (a instanceof BitmapContainer) {
+      long[] words = ((BitmapContainer) a).words;
+      if (b instanceof BitmapContainer) {
+        return Utils.andCount(words, ((BitmapContainer) b).words);
+      }
+      char[] runs = ((RunContainer) b).runs;
+      int count = 0;
+      for (int r = 0; r < runs.length; r += 2) {
+        count += bitmapRangeCardinality(words, runs[r], runs[r] + runs[r + 1] + 1);
+      }
+      return count;
+    } else {
+      return runsAndRuns(((RunContainer) a).runs, ((RunContainer) b).runs);
+    }
+  }
+
+  private static int arrayAndArray(char[] a, char[] b) {
+    if (a.length > b.length) {
+      char[] tmp = a;
+      a = b;
+      b = tmp;
+    }
+    int count = 0;
+    if (a.length * 16 < b.length) {
+      // very different sizes, search the values of the smaller array in the larger one
+      int from = 0;
+      for (char v : a) {
+        int pos = Arrays.binarySearch(b, from, b.length, v);
+        if (pos >= 0) {
+          count++;
+          from = pos + 1;
+        } else {
+          from = -pos - 1;
+        }
+      }
+      return count;
+    }
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  private static int arrayAndRuns(char[] values, char[] runs) {
+    int count = 0;
+    int i = 0;
+    for (int r = 0; r < runs.length && i < values.length; r += 2) {
+      int start = runs[r];
+      int end = start + runs[r + 1];
+      while (i < values.length && values[i] < start) {
+        i++;
+      }
+      while (i < values.length && values[i] <= end) {
+        count++;
+        i++;
+      }
+    }
+    return count;
+  }
+
+  private static int runsAndRuns(char[] a, char[] b) {
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      int aEnd = a[i] + a[i + 1];
+      int bEnd = b[j] + b[j + 1];
+      int overlap = Math.min(aEnd, bEnd) - Math.max(a[i], b[j]) + 1;
+      if (overlap > 0) {
+        count += overlap;
+      }
+      // advance the run ending first
+      if (aEnd < bEnd) {
+        i += 2;
+      } else {
+        j += 2;
+      }
+    }
+    return count;
+  }
+
+  /** @return The number of bits set in the range [from;to) of the bitmap */
+  private static int bitmapRangeCardinality(long[] words, int from, int to) {
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      return Long.bitCount(words[first] & firstMask & lastMask);
+    }
+    int count = Long.bitCount(words[first] & firstMask);
+    for (int w = first + 1; w < last; w++) {
+      count += Long.bitCount(words[w]);
+    }
+    return count + Long.bitCount(words[last] & lastMask);
+  }
+
+  private abstract static class Container {
+    final int cardinality;
+
+    Container(int cardinality) {
+      this.cardinality = cardinality;
+    }
+
+    abstract int getType();
+
+    abstract long getSizeInBytes();
+
+    /** Passes the set bits, offset by base, to the consumer */
+    abstract void forEach(int base, IntConsumer consumer);
+
+    abstract void write(DataOutputStream out) throws IOException;
+
+    static Container read(ByteBuffer buf) {
+      int type = buf.get();
+      switch (type) {
+        case ARRAY:
+          {
+            char[] values = new char[buf.getChar() + 1];
+            buf.asCharBuffer().get(values);
+            buf.position(buf.position() + 2 * values.length);
+            return new ArrayContainer(values);
+          }
+        case BITMAP:
+          {
+            int cardinality = buf.getChar() + 1;
+            long[] words = new long[CHUNK_WORDS];
+            buf.asLongBuffer().get(words);
+            buf.position(buf.position() + 8 * words.length);
+            return new BitmapContainer(words, cardinality);
+          }
+        case RUN:
+          {
+            char[] runs = new char[2 * buf.getChar()];
+            buf.asCharBuffer().get(runs);
+            buf.position(buf.position() + 2 * runs.length);
+            return new RunContainer(runs);
+          }
+        default:
+          throw new IllegalArgumentException("Unknown container type " + type);
+      }
+    }
+  }
+
+  private static final class ArrayContainer extends Container {
+    /** The low 16 bits of the set bits, ascending */
+    final char[] values;
+
+    ArrayContainer(char[] values) {
+      super(values.length);
+      this.values = values;
+    }
+
+    static ArrayContainer of(long[] words, int from, int to, int cardinality) {
+      char[] values = new char[cardinality];
+      int i = 0;
+      for (int w = from; w < to; w++) {
+        long word = words[w];
+        while (word != 0L) {
+          values[i++] = (char) ((w - from) * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values);
+    }
+
+    @Override
+    int getType() {
+      return ARRAY;
+    }
+
+    @Override
+    long getSizeInBytes() {
+      return 2L * values.length;
+    }
+
+    @Override
+    void forEach(int base, IntConsumer consumer) {
+      for (char v : values) {
+        consumer.accept(base | v);
+      }
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+      out.writeByte(ARRAY);
+      out.writeChar(values.length - 1);
+      for (char v : values) {
+        out.writeChar(v);
+      }
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+    /** The 2^16 bits of the chunk */
+    final long[] words;
+
+    BitmapContainer(long[] words, int cardinality) {
+      super(cardinality);
+      this.words = words;
+    }
+
+    @Override
+    int getType() {
+      return BITMAP;
+    }
+
+    @Override
+    long getSizeInBytes() {
+      return 8L * words.length;
+    }
+
+    @Override
+    void forEach(int base, IntConsumer consumer) {
+      for (int w = 0; w < words.length; w++) {
+        long word = words[w];
+        while (word != 0L) {
+          consumer.accept(base | (w * 64 + Long.numberOfTrailingZeros(word)));
+          word &= word - 1;
+        }
+      }
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+      out.writeByte(BITMAP);
+      out.writeChar(cardinality - 1);
+      for (long word : words) {
+        out.writeLong(word);
+      }
+    }
+  }
+
+  private static final class RunContainer extends Container {
+    /** Pairs of the first bit and the length minus one of each run, ascending */
+    final char[] runs;
+
+    RunContainer(char[] runs) {
+      super(countBits(runs));
+      this.runs = runs;
+    }
+
+    private static int countBits(char[] runs) {
+      int count = 0;
+      for (int r = 1; r < runs.length; r += 2) {
+        count += runs[r] + 1;
+      }
+      return count;
+    }
+
+    static RunContainer of(long[] words, int from, int to, int runCount, int cardinality) {
+      char[] runs = new char[2 * runCount];
+      int r = 0;
+      int bit = 0;
+      int end = (to - from) * 64;
+      while (r < runs.length) {
+        bit = nextBit(words, from, to, bit, true);
+        int runEnd = Math.min(end, nextBit(words, from, to, bit, false));
+        runs[r++] = (char) bit;
+        runs[r++] = (char) (runEnd - bit - 1);
+        bit = runEnd;
+      }
+      return new RunContainer(runs);
+    }
+
+    /** @return The next bit of the chunk at or after the given bit having the given state */
+    private static int nextBit(long[] words, int from, int to, int bit, boolean set) {
+      int w = bit >>> 6;
+      long word = (set ? words[from + w] : ~words[from + w]) & (-1L << bit);
+      while (word == 0L) {
+        if (++w >= to - from) {
+          return (to - from) * 64;
+        }
+        word = set ? words[from + w] : ~words[from + w];
+      }
+      return w * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    int getType() {
+      return RUN;
+    }
+
+    @Override
+    long getSizeInBytes() {
+      return 2L * runs.length;
+    }
+
+    @Override
+    void forEach(int base, IntConsumer consumer) {
+      for (int r = 0; r < runs.length; r += 2) {
+        for (int b = runs[r], end = runs[r] + runs[r + 1]; b <= end; b++) {
+          consumer.accept(base | b);
+        }
+      }
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+      out.writeByte(RUN);
+      out.writeChar(runs.length / 2);
+      for (char v : runs) {
+        out.writeChar(v);
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import java.util.Arrays;
+
+/**
+ * The number of set bits of a BitSet in each of a number of equally sized bins. Common bits of the
+ * app A and a library L fall into the same bin, so the sum over all bins of min(|A_b|, |L_b|)
+ * bounds |A & L| from above. Only the non-empty bins of the library are kept.
+ */
+public final class FoldedBitSet {
+  /** The non-empty bins, ascending */
+  private final int[] bins;
+  /** The number of set bits of each non-empty bin */
+  private final int[] counts;
+
+  private FoldedBitSet(int[] bins, int[] counts) {
+    this.bins = bins;
+    this.counts = counts;
+  }
+
+  /**
+   * @param bitSet The BitSet to fold
+   * @param numBins The number of bins
+   * @param size The size of the BitSet, all set bits are below
+   */
+  public static FoldedBitSet of(CompressedBitSet bitSet, int numBins, int size) {
+    int[] binCounts = fold(bitSet, numBins, size);
+    int[] bins = new int[binCounts.length];
+    int[] counts = new int[binCounts.length];
+    int n = 0;
+    for (int b = 0; b < binCounts.length; b++) {
+      if (binCounts[b] > 0) {
+        bins[n] = b;
+        counts[n++] = binCounts[b];
+      }
+    }
+    return new FoldedBitSet(Arrays.copyOf(bins, n), Arrays.copyOf(counts, n));
+  }
+
+  /**
+   * @param bitSet The BitSet to fold
+   * @param numBins The number of bins
+   * @param size The size of the BitSet, all set bits are below
+   * @return The number of set bits in each bin
+   */
+  public static int[] fold(CompressedBitSet bitSet, int numBins, int size) {
+    int[] binCounts = new int[numBins];
+    bitSet.forEach(bit -> binCounts[(int) ((long) bit * numBins / size)]++);
+    return binCounts;
+  }
+
+  /** @return The approximate number of bytes taken by the bins and counts */
+  public long getSizeInBytes() {
+    return 8L * bins.length;
+  }
+
+  /**
+   * @param binCounts The number of set bits of the other BitSet in each bin, see {@link #fold}
+   * @return The maximum number of bits the other BitSet may have in common with this one
+   */
+  public int getUpperBound(int[] binCounts) {
+    int bound = 0;
+    for (int i = 0; i < bins.length; i++) {
+      bound += Math.min(counts[i], binCounts[bins[i]]);
+    }
+    return bound;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global dictionary mapping each distinct normalized instruction to a dense int ID. IDs are only
+ * valid within the running process, persisted data always refers to instructions by their strings.
+ * The dictionary is usually preloaded with all instructions of the corpus (see {@link
+ * de.milux.ordol.binary.CorpusPack}) and grows by app-only instructions during analysis.
+ *
+ * <p>Besides the instruction itself, the String hash of each instruction is kept in a primitive
+ * array, so k-gram hashes can be computed from IDs without touching the strings.
+ */
+public final class InstructionDictionary {
+  private InstructionDictionary() {}
+
+  private static final Map<String, Integer> ids = new ConcurrentHashMap<>(1 << 16);
+  private static volatile String[] instructions = new String[1 << 16];
+  private static volatile int[] hashes = new int[1 << 16];
+  private static int size = 0;
+
+  /**
+   * Returns the ID of the given instruction, assigning the next free ID if it is unknown.
+   *
+   * @param instr The normalized instruction
+   * @return The dense ID of the instruction
+   */
+  public static int getId(String instr) {
+    Integer id = ids.get(instr);
+    return id != null ? id : addInstruction(instr);
+  }
+
+  private static synchronized int addInstruction(String instr) {
+    Integer id = ids.get(instr);
+    if (id != null) {
+      return id;
+    }
+    if (size == instructions.length) {
+      // arrays are published before the new ID, so readers never see a too short array
+      hashes = Arrays.copyOf(hashes, size * 2);
+      instructions = Arrays.copyOf(instructions, size * 2);
+    }
+    instructions[size] = instr;
+    hashes[size] = instr.hashCode();
+    ids.put(instr, size);
+    return size++;
+  }
+
+  /**
+   * Adds all given instructions to the dictionary, in iteration order.
+   *
+   * @param instrs The instructions to add, e.g. all instructions of the corpus
+   */
+  public static void preload(Collection<String> instrs) {
+    for (String instr : instrs) {
+      getId(instr);
+    }
+  }
+
+  public static String getInstruction(int id) {
+    return instructions[id];
+  }
+
+  /** @return The String hash of the instruction with the given ID */
+  public static int getHash(int id) {
+    return hashes[id];
+  }
+
+  public static synchronized int size() {
+    return size;
+  }
+}
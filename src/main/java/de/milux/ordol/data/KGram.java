@@ -22,6 +22,7 @@ import de.milux.ordol.helpers.IndexedList;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class KGram<T> extends AbstractList<T> {
   public final T[] kGramArray;
@@ -90,4 +91,67 @@ public class KGram<T> extends AbstractList<T> {
               }
             });
   }
+
+  private static void makeKGramHashes(
+      int[][] blocks,
+      Map<Integer, Set<Integer>> blockSuccs,
+      IntConsumer hashConsumer,
+      int k,
+      int bi,
+      int ibi,
+      int ki,
+      int hash) {
+    int[] b = blocks[bi];
+    while (ibi < b.length && ki < k) {
+      hash = 31 * hash + b[ibi++];
+      ki++;
+    }
+    // need more instructions to complete k-gram, iterate successors
+    if (ki < k) {
+      Set<Integer> suc = blockSuccs.get(bi);
+      if (suc != null) {
+        for (int si : suc) {
+          makeKGramHashes(blocks, blockSuccs, hashConsumer, k, si, 0, ki, hash);
+        }
+      }
+    } else {
+      hashConsumer.accept(hash);
+    }
+  }
+
+  /**
+   * Enumerates the same k-grams as {@link #getKGrams(List, Map, Consumer, Class, int)}, but on
+   * primitive element hashes, and returns the k-gram hashes instead of the k-grams. The hash of
+   * each k-gram equals {@link List#hashCode()} of the corresponding KGram object.
+   *
+   * @param blocks The hash values of the elements of each block
+   * @param blockSuccs The successors of each block
+   * @param k The k-gram length
+   * @return Sorted array of distinct k-gram hashes
+   */
+  public static int[] getKGramHashes(int[][] blocks, Map<Integer, Set<Integer>> blockSuccs, int k) {
+    int[][] buffer = {new int[64]};
+    int[] size = {0};
+    IntConsumer collector =
+        h -> {
+          if (size[0] == buffer[0].length) {
+            buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+          }
+          buffer[0][size[0]++] = h;
+        };
+    for (int bi = 0; bi < blocks.length; bi++) {
+      for (int i = 0; i < blocks[bi].length; i++) {
+        makeKGramHashes(blocks, blockSuccs, collector, k, bi, i, 0, 1);
+      }
+    }
+    int[] hashes = buffer[0];
+    Arrays.sort(hashes, 0, size[0]);
+    int n = 0;
+    for (int i = 0; i < size[0]; i++) {
+      if (n == 0 || hashes[n - 1] != hashes[i]) {
+        hashes[n++] = hashes[i];
+      }
+    }
+    return Arrays.copyOf(hashes, n);
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import de.milux.ordol.helpers.ByteBufferInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The union U and intersection I of the BitSets of all versions of a library family. For the app
+ * BitSet A and any version L, |A & L| <= |A & I| + min(|L| - |I|, |A & U| - |A & I|), since L
+ * contains I and is contained in U. Two intersections per family thus bound the BitSet score of
+ * all versions, without loading their BitSets.
+ */
+public final class LibraryFamily {
+  /** The keys of all versions, ascending */
+  public final List<String> keys;
+  /** The number of bits set in the BitSet of each version */
+  private final int[] popCounts;
+
+  public final CompressedBitSet union;
+  public final CompressedBitSet intersection;
+
+  private LibraryFamily(
+      List<String> keys, int[] popCounts, CompressedBitSet union, CompressedBitSet intersection) {
+    this.keys = Collections.unmodifiableList(keys);
+    this.popCounts = popCounts;
+    this.union = union;
+    this.intersection = intersection;
+  }
+
+  /**
+   * @param keys The keys of all versions, ascending
+   * @param bitSets Supplies the BitSet of a version
+   */
+  public static LibraryFamily of(List<String> keys, Function<String, CompressedBitSet> bitSets) {
+    int[] popCounts = new int[keys.size()];
+    BitSet union = new BitSet();
+    BitSet intersection = null;
+    for (int i = 0; i < keys.size(); i++) {
+      CompressedBitSet bitSet = bitSets.apply(keys.get(i));
+      popCounts[i] = bitSet.cardinality();
+      BitSet bits = bitSet.toBitSet();
+      union.or(bits);
+      if (intersection == null) {
+        intersection = bits;
+      } else {
+        intersection.and(bits);
+      }
+    }
+    return new LibraryFamily(
+        new ArrayList<>(keys),
+        popCounts,
+        CompressedBitSet.of(union),
+        CompressedBitSet.of(intersection != null ? intersection : new BitSet()));
+  }
+
+  /** @return The number of bits set in the BitSet of the version, or -1 if it is unknown */
+  public int getPopCount(String key) {
+    int i = Collections.binarySearch(keys, key);
+    return i >= 0 ? popCounts[i] : -1;
+  }
+
+  /**
+   * @param unionHits The common bits of the app with the union
+   * @param intersectionHits The common bits of the app with the intersection
+   * @param popCount The number of bits set in the BitSet of the version
+   * @return The maximum number of bits the app may have in common with the version
+   */
+  public int getUpperBound(int unionHits, int intersectionHits, int popCount) {
+    return intersectionHits
+        + Math.min(popCount - intersection.cardinality(), unionHits - intersectionHits);
+  }
+
+  public byte[] toByteArray() {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bos)) {
+      out.writeInt(keys.size());
+      for (int i = 0; i < keys.size(); i++) {
+        out.writeUTF(keys.get(i));
+        out.writeInt(popCounts[i]);
+      }
+      for (CompressedBitSet bitSet : new CompressedBitSet[] {union, intersection}) {
+        byte[] bytes = bitSet.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    } catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+    return bos.toByteArray();
+  }
+
+  public static LibraryFamily valueOf(ByteBuffer buf) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteBufferInputStream(buf));
+    List<String> keys = new ArrayList<>();
+    int[] popCounts = new int[in.readInt()];
+    for (int i = 0; i < popCounts.length; i++) {
+      keys.add(in.readUTF());
+      popCounts[i] = in.readInt();
+    }
+    CompressedBitSet[] bitSets = new CompressedBitSet[2];
+    for (int i = 0; i < bitSets.length; i++) {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      bitSets[i] = CompressedBitSet.valueOf(ByteBuffer.wrap(bytes));
+    }
+    return new LibraryFamily(keys, popCounts, bitSets[0], bitSets[1]);
+  }
+}
@@ -53,7 +53,7 @@ public class MethodData {
   public final int idxInClass;
   public final transient int weight;
   public final transient boolean isConstructor;
-  private Set<Integer> kGramHashes;
+  private transient volatile int[] kGramHashArray;
   public final transient List<UnitData> instr;
 
   public MethodData(SootMethod m, int idxInClass) {
@@ -223,21 +223,53 @@ public class MethodData {
     return result;
   }
 
-  public synchronized Set<Integer> getKGramHashes() {
-    // check reference without locking
-    if (this.kGramHashes == null) {
+  /**
+   * Returns the sorted, distinct hashes of all k-grams of this method for the current K. Arrays
+   * loaded with a signature are used as they are, otherwise they are computed once.
+   *
+   * @return Sorted array of distinct k-gram hashes, must not be modified
+   */
+  public int[] getKGramHashArray() {
+    int[] hashes = this.kGramHashArray;
+    if (hashes == null) {
       synchronized (this) {
-        // check if the previous thread already did the work
-        if (this.kGramHashes != null) {
-          return this.kGramHashes;
+        hashes = this.kGramHashArray;
+        if (hashes == null) {
+          hashes = computeKGramHashArray(K);
+          this.kGramHashArray = hashes;
         }
-        // hashes of all k-grams over all basic blocks
-        Set<Integer> hashes = new HashSet<>();
-        getUnitKGrams(kGram -> hashes.add(kGram.hashCode()));
-        this.kGramHashes = Collections.unmodifiableSet(hashes);
       }
     }
-    return this.kGramHashes;
+    return hashes;
+  }
+
+  /**
+   * Sets the precomputed k-gram hashes of this method, e.g. as loaded from a binary signature.
+   *
+   * @param hashes Sorted array of distinct k-gram hashes for the current K
+   */
+  public void setKGramHashArray(int[] hashes) {
+    this.kGramHashArray = hashes;
+  }
+
+  /**
+   * Enumerates all k-grams of this method for the given k and returns their hashes.
+   *
+   * @param k The k-gram length
+   * @return Sorted array of distinct k-gram hashes
+   */
+  public int[] computeKGramHashArray(int k) {
+    // k-grams are enumerated over the hashes of the instruction IDs, not the UnitData objects
+    int[][] tokenHashes = new int[blocks.size()][];
+    for (int bi = 0; bi < tokenHashes.length; bi++) {
+      List<UnitData> block = blocks.get(bi);
+      int[] th = new int[block.size()];
+      for (int i = 0; i < th.length; i++) {
+        th[i] = InstructionDictionary.getHash(block.get(i).instrId);
+      }
+      tokenHashes[bi] = th;
+    }
+    return KGram.getKGramHashes(tokenHashes, blockSuccs, k);
   }
 
   public String getFullName() {
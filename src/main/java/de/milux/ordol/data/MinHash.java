@@ -0,0 +1,118 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MinHash sketch of a set of k-gram hashes: for each of a fixed number of hash functions, the
+ * minimum hash value over all elements. The fraction of equal minima of two sketches estimates the
+ * Jaccard similarity of the sets, which is converted to the containment of one set in the other
+ * using the set sizes.
+ */
+public final class MinHash {
+  /** The number of distinct elements of the set */
+  public final int size;
+  /** The minima of all hash functions, must not be modified */
+  public final int[] mins;
+
+  private MinHash(int size, int[] mins) {
+    this.size = size;
+    this.mins = mins;
+  }
+
+  /**
+   * @param hashes Distinct k-gram hashes
+   * @param numHashes The number of hash functions
+   * @return The sketch of the given hashes
+   */
+  public static MinHash of(int[] hashes, int numHashes) {
+    int[] mins = new int[numHashes];
+    Arrays.fill(mins, Integer.MAX_VALUE);
+    for (int h : hashes) {
+      for (int i = 0; i < numHashes; i++) {
+        int v = hash(h, i);
+        if (v < mins[i]) {
+          mins[i] = v;
+        }
+      }
+    }
+    return new MinHash(hashes.length, mins);
+  }
+
+  /** The i-th hash function, the murmur3 finalizer applied to the element and a seed */
+  private static int hash(int h, int i) {
+    h ^= i * 0x9E3779B9;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /** @return The estimated Jaccard similarity of both sets */
+  public double jaccard(MinHash other) {
+    if (size == 0 || other.size == 0) {
+      return 0.;
+    }
+    int equal = 0;
+    for (int i = 0; i < mins.length; i++) {
+      if (mins[i] == other.mins[i]) {
+        equal++;
+      }
+    }
+    return (double) equal / mins.length;
+  }
+
+  /**
+   * Estimates the fraction of this set A contained in the other set B. With Jaccard similarity J,
+   * the size of the union is (|A| + |B|) / (1 + J), so the containment of A in B is J (|A| + |B|) /
+   * ((1 + J) |A|).
+   *
+   * @return The estimated containment of this set in the other set, in [0;1]
+   */
+  public double containmentIn(MinHash other) {
+    double j = jaccard(other);
+    return Math.min(1., j * (size + other.size) / ((1. + j) * size));
+  }
+
+  public byte[] toByteArray() {
+    ByteBuffer buf = ByteBuffer.allocate(8 + mins.length * 4);
+    buf.putInt(size).putInt(mins.length);
+    for (int m : mins) {
+      buf.putInt(m);
+    }
+    return buf.array();
+  }
+
+  public static MinHash valueOf(ByteBuffer buf) {
+    int size = buf.getInt();
+    int length = buf.getInt();
+    if (length < 0 || length > buf.remaining() / 4) {
+      throw new IllegalArgumentException("Truncated MinHash sketch of length " + length);
+    }
+    int[] mins = new int[length];
+    for (int i = 0; i < mins.length; i++) {
+      mins[i] = buf.getInt();
+    }
+    return new MinHash(size, mins);
+  }
+}
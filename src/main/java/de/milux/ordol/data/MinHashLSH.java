@@ -0,0 +1,82 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.data;
+
+import java.util.*;
+
+/**
+ * Locality-sensitive hashing over the MinHash sketches of libraries. The minima of each sketch are
+ * split into bands of a fixed number of rows, a library is a candidate for a query sketch if all
+ * minima of at least one band are equal. The probability of a candidate with Jaccard similarity J
+ * is 1 - (1 - J^rows)^bands, queries only look up one bucket per band.
+ */
+public class MinHashLSH {
+  private final int rows;
+  private final List<String> keys = new ArrayList<>();
+  private final List<MinHash> sketches = new ArrayList<>();
+  /** Maps band number and band hash to the IDs of all libraries in this bucket */
+  private final Map<Long, List<Integer>> buckets = new HashMap<>();
+
+  public MinHashLSH(int rows) {
+    this.rows = rows;
+  }
+
+  public synchronized void add(String key, MinHash sketch) {
+    int id = keys.size();
+    keys.add(key);
+    sketches.add(sketch);
+    if (sketch.size == 0) {
+      return;
+    }
+    for (int b = 0; b < sketch.mins.length / rows; b++) {
+      buckets.computeIfAbsent(bucket(sketch, b), k -> new ArrayList<>(1)).add(id);
+    }
+  }
+
+  private long bucket(MinHash sketch, int band) {
+    int h = 1;
+    for (int r = band * rows; r < (band + 1) * rows; r++) {
+      h = 31 * h + sketch.mins[r];
+    }
+    return (long) band << 32 | (h & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @param sketch The sketch of the query set
+   * @return The keys of all libraries sharing at least one band with the query, mapped to their
+   *     estimated containment in the query set
+   */
+  public synchronized Map<String, Double> query(MinHash sketch) {
+    Set<Integer> ids = new HashSet<>();
+    if (sketch.size > 0) {
+      for (int b = 0; b < sketch.mins.length / rows; b++) {
+        ids.addAll(buckets.getOrDefault(bucket(sketch, b), Collections.emptyList()));
+      }
+    }
+    Map<String, Double> result = new HashMap<>(ids.size() * 2);
+    for (int id : ids) {
+      result.put(keys.get(id), sketches.get(id).containmentIn(sketch));
+    }
+    return result;
+  }
+
+  public synchronized int size() {
+    return keys.size();
+  }
+}
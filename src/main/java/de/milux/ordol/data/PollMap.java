@@ -34,6 +34,11 @@ public class PollMap<T> {
     tm.update(val, score, weight);
   }
 
+  /** Normalizes the scores of all items, afterwards concurrent calls of get() are safe */
+  public void normalize() {
+    map.values().forEach(PollItem::getMap);
+  }
+
   public void clear() {
     map.clear();
   }
@@ -31,7 +31,6 @@ import soot.jimple.internal.AbstractStmt;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Objects;
 
 public class UnitData {
 
@@ -41,14 +40,16 @@ public class UnitData {
   public static final String[] EMPTY_STR_ARRAY = new String[0];
 
   public static boolean instrEqual(UnitData ud1, UnitData ud2) {
-    return Objects.equals(ud1.instr, ud2.instr);
+    return ud1.instrId == ud2.instrId;
   }
 
   public static boolean fullyEqual(UnitData ud1, UnitData ud2) {
-    return Objects.equals(ud1.instr, ud2.instr) && Arrays.equals(ud1.refTypes, ud2.refTypes);
+    return ud1.instrId == ud2.instrId && Arrays.equals(ud1.refTypes, ud2.refTypes);
   }
 
   public final String instr;
+  /** The ID of instr in the {@link InstructionDictionary} */
+  public final transient int instrId;
   public final String[] refTypes;
   public final transient boolean hasInvocation;
   public final Tuple2<String, Integer> refMethod;
@@ -56,6 +57,7 @@ public class UnitData {
   public UnitData(Unit u) {
     ArrayList<String> localList = thRefList.get();
     this.instr = Parser.parseUnit(u, localList).intern();
+    this.instrId = InstructionDictionary.getId(this.instr);
     if (localList.isEmpty()) {
       this.refTypes = EMPTY_STR_ARRAY;
     } else {
@@ -84,6 +86,7 @@ public class UnitData {
 
   public UnitData(String s) {
     instr = s;
+    instrId = InstructionDictionary.getId(s);
     refTypes = EMPTY_STR_ARRAY;
     hasInvocation = false;
     refMethod = null;
@@ -91,6 +94,7 @@ public class UnitData {
 
   public UnitData(@Nonnull String instr, @Nonnull String[] refTypes, boolean hasInvocation) {
     this.instr = instr;
+    this.instrId = InstructionDictionary.getId(instr);
     this.refTypes = refTypes.length > 0 ? refTypes : EMPTY_STR_ARRAY;
     this.hasInvocation = hasInvocation;
     this.refMethod = null;
@@ -101,6 +105,7 @@ public class UnitData {
       @Nonnull String[] refTypes,
       @Nonnull Tuple2<String, Integer> refMethod) {
     this.instr = instr;
+    this.instrId = InstructionDictionary.getId(instr);
     this.refTypes = refTypes.length > 0 ? refTypes : EMPTY_STR_ARRAY;
     this.hasInvocation = true;
     this.refMethod = refMethod;
@@ -117,7 +122,7 @@ public class UnitData {
 
   @Override
   public boolean equals(Object o) {
-    return (this == o) || (o instanceof UnitData && this.instr.equals(((UnitData) o).instr));
+    return (this == o) || (o instanceof UnitData && this.instrId == ((UnitData) o).instrId);
   }
 
   @Override
@@ -18,46 +18,92 @@
  */
 package de.milux.ordol.gson;
 
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import de.milux.ordol.data.ClassData;
 import de.milux.ordol.data.MethodData;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.util.*;
 
-public class ClassDataAdapter implements JsonSerializer<ClassData>, JsonDeserializer<ClassData> {
+/**
+ * Streaming adapter for ClassData. Classes are read token by token, so no intermediate JSON tree
+ * is built for the (possibly very large) libraries.
+ */
+public class ClassDataAdapter extends TypeAdapter<ClassData> {
   public static final String NAME_KEY = "name";
   public static final String METHODS_KEY = "methods";
   public static final String LIB_SUPERCLASS_KEY = "super";
   public static final String APP_SUPERCLASS_KEY = "superType";
   public static final String INTERFACES_KEY = "interfaces";
-  public static final Type STRING_SET_TYPE = new TypeToken<HashSet<String>>() {}.getType();
-  public static final Type METHOD_LIST_TYPE = new TypeToken<ArrayList<MethodData>>() {}.getType();
+
+  private final MethodDataAdapter methodAdapter = new MethodDataAdapter();
 
   @Override
-  public ClassData deserialize(JsonElement j, Type type, JsonDeserializationContext jsonCtx) {
-    JsonObject o = j.getAsJsonObject();
-    String name = o.get(NAME_KEY).getAsString();
-    List<MethodData> methods = jsonCtx.deserialize(o.get(METHODS_KEY), METHOD_LIST_TYPE);
-    String libSuperClass =
-        o.has(LIB_SUPERCLASS_KEY) ? o.get(LIB_SUPERCLASS_KEY).getAsString() : null;
-    String appSuperClass =
-        o.has(APP_SUPERCLASS_KEY) ? o.get(APP_SUPERCLASS_KEY).getAsString() : null;
-    Set<String> interfaces = jsonCtx.deserialize(o.get(INTERFACES_KEY), STRING_SET_TYPE);
+  public ClassData read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String name = null;
+    List<MethodData> methods = Collections.emptyList();
+    String libSuperClass = null;
+    String appSuperClass = null;
+    Set<String> interfaces = Collections.emptySet();
+    in.beginObject();
+    while (in.hasNext()) {
+      String key = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (key) {
+        case NAME_KEY:
+          name = in.nextString().intern();
+          break;
+        case METHODS_KEY:
+          methods = new ArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            methods.add(methodAdapter.read(in));
+          }
+          in.endArray();
+          break;
+        case LIB_SUPERCLASS_KEY:
+          libSuperClass = in.nextString().intern();
+          break;
+        case APP_SUPERCLASS_KEY:
+          appSuperClass = in.nextString().intern();
+          break;
+        case INTERFACES_KEY:
+          interfaces = new HashSet<>(MethodDataAdapter.readStringList(in));
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
     return new ClassData(name, methods, libSuperClass, appSuperClass, interfaces);
   }
 
   @Override
-  public JsonElement serialize(ClassData cd, Type type, JsonSerializationContext jsonCtx) {
-    JsonObject o = new JsonObject();
-    o.addProperty(NAME_KEY, cd.name);
-    o.add(METHODS_KEY, jsonCtx.serialize(cd, METHOD_LIST_TYPE));
-    o.addProperty(LIB_SUPERCLASS_KEY, cd.libSuperClass);
-    o.addProperty(APP_SUPERCLASS_KEY, cd.appSuperClass);
-    o.add(INTERFACES_KEY, jsonCtx.serialize(cd.interfaces, STRING_SET_TYPE));
-    return o;
+  public void write(JsonWriter out, ClassData cd) throws IOException {
+    if (cd == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name(NAME_KEY).value(cd.name);
+    out.name(METHODS_KEY).beginArray();
+    for (MethodData md : cd) {
+      methodAdapter.write(out, md);
+    }
+    out.endArray();
+    out.name(LIB_SUPERCLASS_KEY).value(cd.libSuperClass);
+    out.name(APP_SUPERCLASS_KEY).value(cd.appSuperClass);
+    out.name(INTERFACES_KEY);
+    MethodDataAdapter.writeStringCollection(out, cd.interfaces);
+    out.endObject();
   }
 }
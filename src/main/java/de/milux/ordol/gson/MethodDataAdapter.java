@@ -18,14 +18,17 @@
  */
 package de.milux.ordol.gson;
 
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import de.milux.ordol.data.MethodData;
 import de.milux.ordol.data.UnitData;
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.*;
 
-public class MethodDataAdapter implements JsonSerializer<MethodData>, JsonDeserializer<MethodData> {
+/** Streaming adapter for MethodData, reads and writes one token at a time */
+public class MethodDataAdapter extends TypeAdapter<MethodData> {
   public static final String NAME_KEY = "name";
   public static final String FIX_TYPES_KEY = "fixTypes";
   public static final String BLOCKS_KEY = "blocks";
@@ -33,35 +36,143 @@ public class MethodDataAdapter implements JsonSerializer<MethodData>, JsonDeseri
   public static final String CTPH_KEY = "ctph";
   public static final String REFS_KEY = "refs";
   public static final String IDX_KEY = "idx";
-  public static final Type STRING_LIST_TYPE = new TypeToken<ArrayList<String>>() {}.getType();
-  public static final Type UNIT_LIST_LIST_TYPE = new TypeToken<List<List<UnitData>>>() {}.getType();
-  public static final Type INT_INT_SET_MAP_TYPE = new TypeToken<HashMap<Integer, HashSet<Integer>>>() {}.getType();
+
+  private final UnitDataAdapter unitAdapter = new UnitDataAdapter();
 
   @Override
-  public MethodData deserialize(
-      JsonElement jsonElement, Type type, JsonDeserializationContext jsonCtx) {
-    JsonObject o = jsonElement.getAsJsonObject();
-    String name = o.get(NAME_KEY).getAsString();
-    List<String> fixTypes = jsonCtx.deserialize(o.get(FIX_TYPES_KEY), STRING_LIST_TYPE);
-    List<List<UnitData>> blocks = jsonCtx.deserialize(o.get(BLOCKS_KEY), UNIT_LIST_LIST_TYPE);
-    Map<Integer, Set<Integer>> blockSuccs =
-        jsonCtx.deserialize(o.get(BLOCKS_SUCCS_KEY), INT_INT_SET_MAP_TYPE);
-    String ctph = o.has(CTPH_KEY) ? o.get(CTPH_KEY).getAsString() : null;
-    List<String> refs = jsonCtx.deserialize(o.get(REFS_KEY), STRING_LIST_TYPE);
-    int idxInClass = o.get(IDX_KEY).getAsInt();
+  public MethodData read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String name = null;
+    List<String> fixTypes = Collections.emptyList();
+    List<List<UnitData>> blocks = Collections.emptyList();
+    Map<Integer, Set<Integer>> blockSuccs = Collections.emptyMap();
+    String ctph = null;
+    List<String> refs = Collections.emptyList();
+    int idxInClass = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      String key = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (key) {
+        case NAME_KEY:
+          name = in.nextString().intern();
+          break;
+        case FIX_TYPES_KEY:
+          fixTypes = readStringList(in);
+          break;
+        case BLOCKS_KEY:
+          blocks = readBlocks(in);
+          break;
+        case BLOCKS_SUCCS_KEY:
+          blockSuccs = readBlockSuccs(in);
+          break;
+        case CTPH_KEY:
+          ctph = in.nextString();
+          break;
+        case REFS_KEY:
+          refs = readStringList(in);
+          break;
+        case IDX_KEY:
+          idxInClass = in.nextInt();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
     return new MethodData(name, fixTypes, blocks, blockSuccs, ctph, refs, idxInClass);
   }
 
+  static List<String> readStringList(JsonReader in) throws IOException {
+    List<String> list = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      list.add(UnitDataAdapter.nextInternedString(in));
+    }
+    in.endArray();
+    return list;
+  }
+
+  private List<List<UnitData>> readBlocks(JsonReader in) throws IOException {
+    List<List<UnitData>> blocks = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      List<UnitData> block = new ArrayList<>();
+      in.beginArray();
+      while (in.hasNext()) {
+        block.add(unitAdapter.read(in));
+      }
+      in.endArray();
+      blocks.add(block);
+    }
+    in.endArray();
+    return blocks;
+  }
+
+  private static Map<Integer, Set<Integer>> readBlockSuccs(JsonReader in) throws IOException {
+    Map<Integer, Set<Integer>> blockSuccs = new HashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      Integer from = Integer.valueOf(in.nextName());
+      Set<Integer> succs = new HashSet<>();
+      in.beginArray();
+      while (in.hasNext()) {
+        succs.add(in.nextInt());
+      }
+      in.endArray();
+      blockSuccs.put(from, succs);
+    }
+    in.endObject();
+    return blockSuccs;
+  }
+
+  static void writeStringCollection(JsonWriter out, Collection<String> strings)
+      throws IOException {
+    out.beginArray();
+    for (String s : strings) {
+      out.value(s);
+    }
+    out.endArray();
+  }
+
   @Override
-  public JsonElement serialize(MethodData md, Type type, JsonSerializationContext jsonCtx) {
-    JsonObject o = new JsonObject();
-    o.addProperty(NAME_KEY, md.name);
-    o.add(FIX_TYPES_KEY, jsonCtx.serialize(md.fixTypes));
-    o.add(BLOCKS_KEY, jsonCtx.serialize(md.blocks));
-    o.add(BLOCKS_SUCCS_KEY, jsonCtx.serialize(md.blockSuccs));
-    o.addProperty(CTPH_KEY, md.ctph);
-    o.add(REFS_KEY, jsonCtx.serialize(md.refs));
-    o.addProperty(IDX_KEY, md.idxInClass);
-    return o;
+  public void write(JsonWriter out, MethodData md) throws IOException {
+    if (md == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name(NAME_KEY).value(md.name);
+    out.name(FIX_TYPES_KEY);
+    writeStringCollection(out, md.fixTypes);
+    out.name(BLOCKS_KEY).beginArray();
+    for (List<UnitData> block : md.blocks) {
+      out.beginArray();
+      for (UnitData ud : block) {
+        unitAdapter.write(out, ud);
+      }
+      out.endArray();
+    }
+    out.endArray();
+    out.name(BLOCKS_SUCCS_KEY).beginObject();
+    for (Map.Entry<Integer, Set<Integer>> e : md.blockSuccs.entrySet()) {
+      out.name(String.valueOf(e.getKey())).beginArray();
+      for (int succ : e.getValue()) {
+        out.value(succ);
+      }
+      out.endArray();
+    }
+    out.endObject();
+    out.name(CTPH_KEY).value(md.ctph);
+    out.name(REFS_KEY);
+    writeStringCollection(out, md.refs);
+    out.name(IDX_KEY).value(md.idxInClass);
+    out.endObject();
   }
 }
@@ -18,54 +18,103 @@
  */
 package de.milux.ordol.gson;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import de.milux.ordol.data.UnitData;
 import io.vavr.Tuple;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import java.lang.reflect.Type;
-import java.util.Arrays;
+/**
+ * Streaming adapter for UnitData. Units without referenced types are written as plain instruction
+ * strings, all others as arrays of the form [instr, [refTypes...](, refClass, refIdx | null)].
+ */
+public class UnitDataAdapter extends TypeAdapter<UnitData> {
+  private static final String[] EMPTY_STR_ARRAY = new String[0];
 
-public class UnitDataAdapter implements JsonSerializer<UnitData>, JsonDeserializer<UnitData> {
   @Override
-  public UnitData deserialize(
-      JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) {
-    if (jsonElement.isJsonPrimitive()) {
-      return new UnitData(jsonElement.getAsString());
-    } else if (jsonElement.isJsonArray()) {
-      JsonArray a = jsonElement.getAsJsonArray();
-      String instr = a.get(0).getAsString();
-      String[] refTypes = jsonDeserializationContext.deserialize(a.get(1), String[].class);
-      if (a.size() <= 3) {
-        return new UnitData(instr, refTypes, a.size() == 3);
-      } else if (a.size() == 4) {
-        return new UnitData(instr, refTypes, Tuple.of(a.get(2).getAsString(), a.get(3).getAsInt()));
-      } else if (a.size() > 4) {
-        throw new JsonParseException("Could not parse UnitData");
+  public UnitData read(JsonReader in) throws IOException {
+    JsonToken token = in.peek();
+    if (token == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    } else if (token != JsonToken.BEGIN_ARRAY) {
+      return new UnitData(in.nextString().intern());
+    }
+    in.beginArray();
+    String instr = in.nextString().intern();
+    String[] refTypes = readStringArray(in);
+    UnitData ud;
+    if (!in.hasNext()) {
+      ud = new UnitData(instr, refTypes, false);
+    } else if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      ud = new UnitData(instr, refTypes, true);
+    } else {
+      String refClass = in.nextString().intern();
+      if (in.hasNext()) {
+        ud = new UnitData(instr, refTypes, Tuple.of(refClass, in.nextInt()));
+      } else {
+        ud = new UnitData(instr, refTypes, true);
       }
     }
-    return null;
+    if (in.hasNext()) {
+      throw new JsonParseException("Could not parse UnitData");
+    }
+    in.endArray();
+    return ud;
+  }
+
+  private static String[] readStringArray(JsonReader in) throws IOException {
+    in.beginArray();
+    if (!in.hasNext()) {
+      in.endArray();
+      return EMPTY_STR_ARRAY;
+    }
+    List<String> strings = new ArrayList<>(4);
+    while (in.hasNext()) {
+      strings.add(nextInternedString(in));
+    }
+    in.endArray();
+    return strings.toArray(EMPTY_STR_ARRAY);
+  }
+
+  /** Reads the next string or null value, non-null strings are interned */
+  static String nextInternedString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString().intern();
   }
 
   @Override
-  public JsonElement serialize(
-      UnitData u, Type type, JsonSerializationContext jsonSerializationContext) {
-    if (u.refTypes.length == 0) {
-      return new JsonPrimitive(u.instr);
+  public void write(JsonWriter out, UnitData u) throws IOException {
+    if (u == null) {
+      out.nullValue();
+    } else if (u.refTypes.length == 0) {
+      out.value(u.instr);
     } else {
-      JsonArray a = new JsonArray();
-      JsonArray refTypes = new JsonArray();
-      Arrays.stream(u.refTypes).forEach(refTypes::add);
-      a.add(u.instr);
-      a.add(refTypes);
+      out.beginArray();
+      out.value(u.instr);
+      out.beginArray();
+      for (String refType : u.refTypes) {
+        out.value(refType);
+      }
+      out.endArray();
       if (u.hasInvocation) {
         if (u.refMethod == null) {
-          a.add(JsonNull.INSTANCE);
+          out.nullValue();
         } else {
-          a.add(u.refMethod._1);
-          a.add(u.refMethod._2);
+          out.value(u.refMethod._1);
+          out.value(u.refMethod._2);
         }
       }
-      return a;
+      out.endArray();
     }
   }
 }
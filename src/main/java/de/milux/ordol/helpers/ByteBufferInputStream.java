@@ -0,0 +1,51 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** Minimal InputStream view on a ByteBuffer, reading advances the position of the buffer */
+public class ByteBufferInputStream extends InputStream {
+  private final ByteBuffer buf;
+
+  public ByteBufferInputStream(ByteBuffer buf) {
+    this.buf = buf;
+  }
+
+  @Override
+  public int read() {
+    return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (!buf.hasRemaining()) {
+      return -1;
+    }
+    len = Math.min(len, buf.remaining());
+    buf.get(b, off, len);
+    return len;
+  }
+
+  @Override
+  public int available() {
+    return buf.remaining();
+  }
+}
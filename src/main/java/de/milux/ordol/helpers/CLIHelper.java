@@ -18,6 +18,8 @@
  */
 package de.milux.ordol.helpers;
 
+import de.milux.ordol.binary.Codec;
+import de.milux.ordol.binary.Codecs;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
 
@@ -61,4 +63,32 @@ public final class CLIHelper {
     }
     return def;
   }
+
+  /** @return The formula of the option, if it compiles with the given variables */
+  public static String validateFormula(
+      CommandLine cmd, String option, String x, String y, String def) throws ParseException {
+    String formula = cmd.getOptionValue(option);
+    if (formula != null) {
+      try {
+        Formula.compile(formula, x, y);
+      } catch (IllegalArgumentException iae) {
+        throw new ParseException(iae.getMessage());
+      }
+      return formula;
+    }
+    return def;
+  }
+
+  public static Codec validateCodec(CommandLine cmd, String option, Codec def)
+      throws ParseException {
+    String name = cmd.getOptionValue(option);
+    if (name != null) {
+      try {
+        return Codecs.forName(name);
+      } catch (IllegalArgumentException iae) {
+        throw new ParseException(iae.getMessage());
+      }
+    }
+    return def;
+  }
 }
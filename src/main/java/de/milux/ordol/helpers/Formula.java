@@ -0,0 +1,280 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Compiles a formula in two variables, in the syntax of exp4j, to a tree of operators. The result
+ * is immutable, so it can be evaluated concurrently, and does not allocate during evaluation.
+ * Supported are numbers, the operators + - * / % ^ (right-associative, binding stronger than the
+ * unary signs), implicit multiplication (e.g. "2 size"), the constants pi, e and phi, the built-in
+ * functions of exp4j, and min/max with two arguments.
+ */
+public final class Formula {
+  private static final Map<String, DoubleUnaryOperator> FUNCTIONS = new HashMap<>();
+  private static final Map<String, DoubleBinaryOperator> BINARY_FUNCTIONS = new HashMap<>();
+  private static final Map<String, Double> CONSTANTS = new HashMap<>();
+
+  static {
+    FUNCTIONS.put("sin", Math::sin);
+    FUNCTIONS.put("cos", Math::cos);
+    FUNCTIONS.put("tan", Math::tan);
+    FUNCTIONS.put("cot", v -> 1. / Math.tan(v));
+    FUNCTIONS.put("log", Math::log);
+    FUNCTIONS.put("log2", v -> Math.log(v) / Math.log(2.));
+    FUNCTIONS.put("log10", Math::log10);
+    FUNCTIONS.put("log1p", Math::log1p);
+    FUNCTIONS.put("abs", Math::abs);
+    FUNCTIONS.put("acos", Math::acos);
+    FUNCTIONS.put("asin", Math::asin);
+    FUNCTIONS.put("atan", Math::atan);
+    FUNCTIONS.put("cbrt", Math::cbrt);
+    FUNCTIONS.put("floor", Math::floor);
+    FUNCTIONS.put("sinh", Math::sinh);
+    FUNCTIONS.put("sqrt", Math::sqrt);
+    FUNCTIONS.put("tanh", Math::tanh);
+    FUNCTIONS.put("cosh", Math::cosh);
+    FUNCTIONS.put("ceil", Math::ceil);
+    FUNCTIONS.put("exp", Math::exp);
+    FUNCTIONS.put("expm1", Math::expm1);
+    FUNCTIONS.put("signum", Math::signum);
+    BINARY_FUNCTIONS.put("pow", Math::pow);
+    BINARY_FUNCTIONS.put("min", Math::min);
+    BINARY_FUNCTIONS.put("max", Math::max);
+    CONSTANTS.put("pi", Math.PI);
+    CONSTANTS.put("\u03C0", Math.PI);
+    CONSTANTS.put("e", Math.E);
+    CONSTANTS.put("\u03C6", 1.61803398874d);
+  }
+
+  private final String formula;
+  private final List<String> variables;
+  private int pos = 0;
+
+  private Formula(String formula, List<String> variables) {
+    this.formula = formula;
+    this.variables = variables;
+  }
+
+  /**
+   * @param formula The formula to compile
+   * @param x The name of the variable passed as first operand, or null
+   * @param y The name of the variable passed as second operand, or null
+   * @return The compiled formula, taking the values of both variables
+   * @throws IllegalArgumentException if the formula is invalid
+   */
+  public static DoubleBinaryOperator compile(String formula, String x, String y) {
+    Formula parser = new Formula(formula, Arrays.asList(x, y));
+    DoubleBinaryOperator op = parser.parseSum();
+    parser.skipSpaces();
+    if (parser.pos < formula.length()) {
+      throw parser.error("Unexpected character '" + formula.charAt(parser.pos) + "'");
+    }
+    return op;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + pos + " of " + formula);
+  }
+
+  private void skipSpaces() {
+    while (pos < formula.length() && Character.isWhitespace(formula.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  /** @return true if the next character is c, which is skipped */
+  private boolean accept(char c) {
+    skipSpaces();
+    if (pos < formula.length() && formula.charAt(pos) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  /** @return true if the next token starts an operand, i.e. implies a multiplication */
+  private boolean atOperand() {
+    skipSpaces();
+    if (pos >= formula.length()) {
+      return false;
+    }
+    char c = formula.charAt(pos);
+    return c == '(' || c == '.' || Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private DoubleBinaryOperator parseSum() {
+    DoubleBinaryOperator op = parseProduct();
+    while (true) {
+      DoubleBinaryOperator l = op;
+      if (accept('+')) {
+        DoubleBinaryOperator r = parseProduct();
+        op = (x, y) -> l.applyAsDouble(x, y) + r.applyAsDouble(x, y);
+      } else if (accept('-')) {
+        DoubleBinaryOperator r = parseProduct();
+        op = (x, y) -> l.applyAsDouble(x, y) - r.applyAsDouble(x, y);
+      } else {
+        return op;
+      }
+    }
+  }
+
+  private DoubleBinaryOperator parseProduct() {
+    DoubleBinaryOperator op = parseSigned();
+    while (true) {
+      DoubleBinaryOperator l = op;
+      if (accept('*') || atOperand()) {
+        DoubleBinaryOperator r = parseSigned();
+        op = (x, y) -> l.applyAsDouble(x, y) * r.applyAsDouble(x, y);
+      } else if (accept('/')) {
+        DoubleBinaryOperator r = parseSigned();
+        op = (x, y) -> l.applyAsDouble(x, y) / divisor(r.applyAsDouble(x, y));
+      } else if (accept('%')) {
+        DoubleBinaryOperator r = parseSigned();
+        op = (x, y) -> l.applyAsDouble(x, y) % divisor(r.applyAsDouble(x, y));
+      } else {
+        return op;
+      }
+    }
+  }
+
+  /** Fails for a zero divisor, like exp4j */
+  private static double divisor(double d) {
+    if (d == 0.) {
+      throw new ArithmeticException("Division by zero!");
+    }
+    return d;
+  }
+
+  private DoubleBinaryOperator parseSigned() {
+    if (accept('-')) {
+      DoubleBinaryOperator op = parseSigned();
+      return (x, y) -> -op.applyAsDouble(x, y);
+    } else if (accept('+')) {
+      return parseSigned();
+    }
+    return parsePower();
+  }
+
+  private DoubleBinaryOperator parsePower() {
+    DoubleBinaryOperator base = parseOperand();
+    if (accept('^')) {
+      // right-associative, the exponent may have a sign
+      DoubleBinaryOperator exponent = parseSigned();
+      return (x, y) -> Math.pow(base.applyAsDouble(x, y), exponent.applyAsDouble(x, y));
+    }
+    return base;
+  }
+
+  private DoubleBinaryOperator parseOperand() {
+    skipSpaces();
+    if (pos >= formula.length()) {
+      throw error("Missing operand");
+    }
+    char c = formula.charAt(pos);
+    if (accept('(')) {
+      DoubleBinaryOperator op = parseSum();
+      if (!accept(')')) {
+        throw error("Missing ')'");
+      }
+      return op;
+    } else if (Character.isDigit(c) || c == '.') {
+      double value = parseNumber();
+      return (x, y) -> value;
+    } else if (Character.isLetter(c) || c == '_') {
+      return parseName();
+    }
+    throw error("Unexpected character '" + c + "'");
+  }
+
+  private double parseNumber() {
+    int start = pos;
+    while (pos < formula.length()
+        && (Character.isDigit(formula.charAt(pos)) || formula.charAt(pos) == '.')) {
+      pos++;
+    }
+    // an exponent needs digits, otherwise "e" is the constant, multiplied implicitly
+    int end = pos;
+    if (end < formula.length() && (formula.charAt(end) == 'e' || formula.charAt(end) == 'E')) {
+      end++;
+      if (end < formula.length() && (formula.charAt(end) == '+' || formula.charAt(end) == '-')) {
+        end++;
+      }
+      if (end < formula.length() && Character.isDigit(formula.charAt(end))) {
+        while (end < formula.length() && Character.isDigit(formula.charAt(end))) {
+          end++;
+        }
+        pos = end;
+      }
+    }
+    try {
+      return Double.parseDouble(formula.substring(start, pos));
+    } catch (NumberFormatException nfe) {
+      throw error("Invalid number " + formula.substring(start, pos));
+    }
+  }
+
+  private DoubleBinaryOperator parseName() {
+    int start = pos;
+    while (pos < formula.length()
+        && (Character.isLetterOrDigit(formula.charAt(pos)) || formula.charAt(pos) == '_')) {
+      pos++;
+    }
+    String name = formula.substring(start, pos);
+    if (FUNCTIONS.containsKey(name) || BINARY_FUNCTIONS.containsKey(name)) {
+      if (!accept('(')) {
+        throw error("Missing '(' after function " + name);
+      }
+      List<DoubleBinaryOperator> args = new ArrayList<>();
+      do {
+        args.add(parseSum());
+      } while (accept(','));
+      if (!accept(')')) {
+        throw error("Missing ')' after arguments of function " + name);
+      }
+      int numArgs = FUNCTIONS.containsKey(name) ? 1 : 2;
+      if (args.size() != numArgs) {
+        throw error("Function " + name + " takes " + numArgs + " arguments, not " + args.size());
+      }
+      DoubleBinaryOperator a = args.get(0);
+      if (numArgs == 1) {
+        DoubleUnaryOperator f = FUNCTIONS.get(name);
+        return (x, y) -> f.applyAsDouble(a.applyAsDouble(x, y));
+      }
+      DoubleBinaryOperator b = args.get(1);
+      DoubleBinaryOperator f = BINARY_FUNCTIONS.get(name);
+      return (x, y) -> f.applyAsDouble(a.applyAsDouble(x, y), b.applyAsDouble(x, y));
+    } else if (name.equals(variables.get(0))) {
+      return (x, y) -> x;
+    } else if (name.equals(variables.get(1))) {
+      return (x, y) -> y;
+    } else if (CONSTANTS.containsKey(name)) {
+      double value = CONSTANTS.get(name);
+      return (x, y) -> value;
+    }
+    throw error("Unknown variable or function " + name);
+  }
+}
@@ -21,14 +21,26 @@ package de.milux.ordol.helpers;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.io.BaseEncoding;
 import com.google.gson.reflect.TypeToken;
 import de.milux.ordol.Constants;
-import de.milux.ordol.data.BitSetWrapper;
+import de.milux.ordol.binary.BitIndex;
+import de.milux.ordol.binary.Codec;
+import de.milux.ordol.binary.Codecs;
+import de.milux.ordol.binary.CorpusPack;
+import de.milux.ordol.binary.SignatureFormat;
+import de.milux.ordol.binary.SignatureReader;
+import de.milux.ordol.binary.SignatureWriter;
 import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.CompressedBitSet;
+import de.milux.ordol.data.FoldedBitSet;
+import de.milux.ordol.data.InstructionDictionary;
+import de.milux.ordol.data.LibraryFamily;
+import de.milux.ordol.data.MinHash;
+import de.milux.ordol.data.MinHashLSH;
 import io.vavr.control.Try;
 
 import javax.annotation.Nonnull;
-import javax.xml.bind.DatatypeConverter;
 import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
@@ -39,54 +51,157 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 public final class IOHelper {
+  /** Extension of JSON library signatures, followed by the extension of their codec */
+  public static final String JSON_EXT = ".json";
   public static final Type CLASSDATA_LIST_TYPE = new TypeToken<ArrayList<ClassData>>() {}.getType();
-  /** A cache for BitSet objects, using soft values (i.e. SoftReference gc semantics) */
-  public static final LoadingCache<String, BitSetWrapper> BITSET_CACHE =
+  /** A cache for library BitSets, using soft values (i.e. SoftReference gc semantics) */
+  public static final LoadingCache<String, CompressedBitSet> BITSET_CACHE =
       CacheBuilder.newBuilder()
           .softValues()
           .build(
-              new CacheLoader<String, BitSetWrapper>() {
+              new CacheLoader<String, CompressedBitSet>() {
                 @Override
-                public BitSetWrapper load(String libraryPath) throws Exception {
-                  Path bitSetPath =
+                public CompressedBitSet load(String libraryPath) throws Exception {
+                  Codec codec = Constants.BITSET_CODEC;
+                  Path basePath =
                       Constants.BITSET_CACHE_PATH.resolve(
                           Constants.LIBS_DIRECTORY.relativize(
-                              Constants.FS.getPath(libraryPath + ".bs" + Constants.K + ".zlib")));
-                  if (Files.exists(bitSetPath)) {
-                    byte[] compressedBytes;
-                    byte[] buffer = new byte[(Constants.M_PRIME / 64 + 1) * 8];
-                    compressedBytes = Files.readAllBytes(bitSetPath);
-                    Inflater inflater = new Inflater();
-                    inflater.setInput(compressedBytes);
-                    int inflated = inflater.inflate(buffer);
-                    return new BitSetWrapper(BitSet.valueOf(ByteBuffer.wrap(buffer, 0, inflated)));
-                  } else {
-                    List<ClassData> cdList = getClassData(libraryPath);
-                    Set<Integer> hashes = new HashSet<>();
-                    cdList.forEach(cd -> cd.forEach(md -> hashes.addAll(md.getKGramHashes())));
-                    Files.createDirectories(bitSetPath.getParent());
-                    BitSet bitSet = Utils.makeBitSet(hashes, Constants.M_PRIME);
-                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
-                    deflater.setStrategy(Deflater.FILTERED);
-                    try (OutputStream w =
-                        new DeflaterOutputStream(Files.newOutputStream(bitSetPath), deflater)) {
-                      w.write(bitSet.toByteArray());
+                              Constants.FS.getPath(libraryPath + ".bs" + Constants.K)));
+                  Path bitSetPath = withExtension(basePath, codec);
+                  ByteBuffer buf = readCacheFile(basePath);
+                  // files of older versions hold the plain BitSet and are rebuilt below
+                  if (buf != null && CompressedBitSet.isCompressedBitSet(buf)) {
+                    return CompressedBitSet.valueOf(buf);
+                  }
+                  List<ClassData> cdList = getClassData(libraryPath);
+                  // uses the k-gram hashes stored with the signature, if present
+                  int[] hashes =
+                      Utils.unionSorted(
+                          cdList
+                              .stream()
+                              .map(ClassData::getKGramHashArray)
+                              .collect(Collectors.toList()));
+                  Files.createDirectories(bitSetPath.getParent());
+                  CompressedBitSet bitSet =
+                      CompressedBitSet.of(Utils.makeBitSet(hashes, Constants.M_PRIME));
+                  codec.write(bitSetPath, bitSet.toByteArray());
+                  return bitSet;
+                }
+              });
+
+  /**
+   * A cache for the union and intersection of the BitSets of all versions of a library family,
+   * persisted next to the cached BitSets
+   */
+  public static final LoadingCache<String, LibraryFamily> FAMILY_CACHE =
+      CacheBuilder.newBuilder()
+          .softValues()
+          .build(
+              new CacheLoader<String, LibraryFamily>() {
+                @Override
+                public LibraryFamily load(String familyName) throws Exception {
+                  Codec codec = Constants.BITSET_CODEC;
+                  List<String> keys =
+                      getLibraryMap()
+                          .entrySet()
+                          .stream()
+                          .filter(e -> getFamilyName(e.getKey()).equals(familyName))
+                          .map(e -> toPackKey(e.getValue()))
+                          .distinct()
+                          .sorted()
+                          .collect(Collectors.toList());
+                  Path basePath =
+                      Constants.BITSET_CACHE_PATH
+                          .resolve("families")
+                          .resolve(familyName + ".bs" + Constants.K);
+                  Path familyPath = withExtension(basePath, codec);
+                  // rebuild the family if versions have been added or removed
+                  LibraryFamily cached =
+                      Try.of(() -> LibraryFamily.valueOf(readCacheFile(basePath)))
+                          .filter(f -> f.keys.equals(keys))
+                          .getOrNull();
+                  if (cached != null) {
+                    return cached;
+                  }
+                  LibraryFamily family =
+                      LibraryFamily.of(keys, key -> BITSET_CACHE.getUnchecked(toLibraryPath(key)));
+                  Files.createDirectories(familyPath.getParent());
+                  codec.write(familyPath, family.toByteArray());
+                  return family;
+                }
+              });
+
+  /** A cache for the MinHash sketches of libraries, persisted next to the cached BitSets */
+  public static final LoadingCache<String, MinHash> MINHASH_CACHE =
+      CacheBuilder.newBuilder()
+          .softValues()
+          .build(
+              new CacheLoader<String, MinHash>() {
+                @Override
+                public MinHash load(String libraryPath) throws Exception {
+                  Path sketchPath =
+                      Constants.BITSET_CACHE_PATH.resolve(
+                          Constants.LIBS_DIRECTORY.relativize(
+                              Constants.FS.getPath(
+                                  libraryPath
+                                      + ".mh"
+                                      + Constants.K
+                                      + "-"
+                                      + Constants.MINHASH_SIZE)));
+                  if (Files.exists(sketchPath)) {
+                    // sketches truncated by older versions are rebuilt below
+                    MinHash sketch =
+                        Try.of(
+                                () ->
+                                    MinHash.valueOf(
+                                        ByteBuffer.wrap(Files.readAllBytes(sketchPath))))
+                            .getOrNull();
+                    if (sketch != null) {
+                      return sketch;
                     }
-                    return new BitSetWrapper(bitSet);
                   }
+                  int[] hashes =
+                      Utils.unionSorted(
+                          getClassData(libraryPath)
+                              .stream()
+                              .map(ClassData::getKGramHashArray)
+                              .collect(Collectors.toList()));
+                  MinHash sketch = MinHash.of(hashes, Constants.MINHASH_SIZE);
+                  Files.createDirectories(sketchPath.getParent());
+                  // concurrent analyses must not read a partially written sketch
+                  Path tmpPath = Utils.getTempSibling(sketchPath);
+                  try {
+                    Files.write(tmpPath, sketch.toByteArray(), StandardOpenOption.CREATE_NEW);
+                    Files.move(tmpPath, sketchPath, StandardCopyOption.ATOMIC_MOVE);
+                  } finally {
+                    Files.deleteIfExists(tmpPath);
+                  }
+                  return sketch;
+                }
+              });
+
+  /** A cache for the folded BitSets of libraries, derived from the cached BitSets */
+  public static final LoadingCache<String, FoldedBitSet> FOLDED_CACHE =
+      CacheBuilder.newBuilder()
+          .softValues()
+          .build(
+              new CacheLoader<String, FoldedBitSet>() {
+                @Override
+                public FoldedBitSet load(String libraryPath) throws Exception {
+                  return FoldedBitSet.of(
+                      BITSET_CACHE.get(libraryPath), Constants.FOLD_BINS, Constants.M_PRIME);
                 }
               });
 
@@ -102,8 +217,67 @@ public final class IOHelper {
               });
   private static Map<String, String> libraryMap = null;
   private static final Object libraryMapMonitor = new Object();
+  /** Version of the app class extraction, increase whenever the creation of ClassData changes */
+  private static final int APP_CACHE_VERSION = 1;
+  /** Empty if there is no pack file, published only after the instructions have been preloaded */
+  private static volatile Optional<CorpusPack> corpusPack = null;
+  private static volatile BitIndex bitIndex = null;
+  private static volatile MinHashLSH minHashLSH = null;
+
+  private static Path withExtension(Path path, Codec codec) {
+    return path.resolveSibling(path.getFileName() + codec.getExtension());
+  }
+
+  /**
+   * Reads a file of the bitset cache. If it has been written by another codec than {@link
+   * Constants#BITSET_CODEC} (e.g. by an older version), it is re-written with the current codec and
+   * the old file is deleted, so the cache is not rebuilt when the codec changes.
+   *
+   * @param basePath The path of the cache file without codec extension
+   * @return The decoded content, or null if there is no cache file
+   */
+  private static ByteBuffer readCacheFile(Path basePath) throws IOException {
+    Codec codec = Constants.BITSET_CODEC;
+    Path path = withExtension(basePath, codec);
+    if (Files.exists(path)) {
+      return codec.read(path);
+    }
+    for (Codec c : Codecs.ALL) {
+      Path oldPath = withExtension(basePath, c);
+      if (!oldPath.equals(path) && Files.exists(oldPath)) {
+        ByteBuffer buf = c.read(oldPath);
+        byte[] data = new byte[buf.remaining()];
+        buf.duplicate().get(data);
+        codec.write(path, data);
+        Files.deleteIfExists(oldPath);
+        return buf;
+      }
+    }
+    return null;
+  }
 
   private static void initLibraryMap() {
+    CorpusPack pack = getCorpusPack();
+    if (pack != null) {
+      // the pack index replaces the walk over the library directory
+      Map<String, String> libMap = new LinkedHashMap<>();
+      pack.getEntries()
+          .values()
+          .forEach(e -> libMap.put(e.name, fromPackKey(e.path).toString()));
+      libraryMap = Collections.unmodifiableMap(libMap);
+    } else {
+      libraryMap = Collections.unmodifiableMap(scanLibraryDirectory());
+    }
+  }
+
+  /**
+   * Walks the library directory and collects all libraries listed in the index.json files, using
+   * only one representative of identical signatures.
+   *
+   * @return A map of library names (containing all versions with identical signatures) and paths
+   *     of the respective signatures without file extension
+   */
+  public static Map<String, String> scanLibraryDirectory() {
     Map<String, String> libMap = new LinkedHashMap<>();
     try {
       Files.walkFileTree(
@@ -144,11 +318,10 @@ public final class IOHelper {
 
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-              final String ext = ".json.zlib";
               if (!used.isEmpty()) {
-                String fileName = file.getFileName().toString();
-                if (fileName.endsWith(ext)) {
-                  String fileNameWoExt = fileName.substring(0, fileName.length() - ext.length());
+                String fileNameWoExt =
+                    Codecs.stripExtension(file.getFileName().toString(), JSON_EXT);
+                if (fileNameWoExt != null) {
                   if (used.containsKey(fileNameWoExt)) {
                     String absPath = file.toString();
                     String relPath =
@@ -156,7 +329,7 @@ public final class IOHelper {
                             .relativize(file.getParent())
                             .toString()
                             .replace(File.separator, " ");
-                    absPath = absPath.substring(0, absPath.length() - ext.length());
+                    absPath = Codecs.stripExtension(absPath, JSON_EXT);
                     libMap.put(relPath + " " + used.get(fileNameWoExt), absPath);
                   }
                 }
@@ -167,7 +340,147 @@ public final class IOHelper {
     } catch (Exception iox) {
       iox.printStackTrace();
     }
-    libraryMap = Collections.unmodifiableMap(libMap);
+    return libMap;
+  }
+
+  /**
+   * Opens the corpus pack on first access, if it exists and {@link Constants#USE_CORPUS_PACK} is
+   * set. The pack is not checked against the library directory, as this would require the walk
+   * over all signatures the pack replaces. Instead, {@link #invalidateCorpusPack()} deletes it
+   * whenever a library is written.
+   *
+   * @return The corpus pack, or null if there is no pack file or it is not used
+   */
+  public static CorpusPack getCorpusPack() {
+    if (corpusPack == null) {
+      synchronized (libraryMapMonitor) {
+        if (corpusPack == null) {
+          CorpusPack pack = null;
+          if (Constants.USE_CORPUS_PACK && Files.exists(Constants.CORPUS_PACK_PATH)) {
+            try {
+              pack = new CorpusPack(Constants.CORPUS_PACK_PATH);
+              // assign dense IDs to all corpus instructions in one go
+              InstructionDictionary.preload(pack.getInstructions());
+            } catch (IOException ioe) {
+              System.err.println("Could not open corpus pack " + Constants.CORPUS_PACK_PATH);
+              ioe.printStackTrace();
+              pack = null;
+            }
+          }
+          corpusPack = Optional.ofNullable(pack);
+        }
+      }
+    }
+    return corpusPack.orElse(null);
+  }
+
+  /**
+   * Deletes the corpus pack, which must be called whenever a library signature or index.json file
+   * in the library directory is written, as the pack would hide these changes otherwise.
+   */
+  public static void invalidateCorpusPack() {
+    try {
+      if (Files.deleteIfExists(Constants.CORPUS_PACK_PATH)) {
+        Utils.syncPrint(
+            "Deleted corpus pack "
+                + Constants.CORPUS_PACK_PATH
+                + " as the library directory has changed, please re-create it.");
+      }
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  /**
+   * Opens the inverted index over the bitsets of all libraries of the library map. The index is
+   * (re-)built from the bitset cache if it does not exist or covers other libraries.
+   *
+   * @return The bit index, or null if it could not be created
+   */
+  public static BitIndex getBitIndex() {
+    if (bitIndex == null) {
+      synchronized (libraryMapMonitor) {
+        if (bitIndex == null) {
+          Path indexPath = Constants.BITSET_CACHE_PATH.resolve("index.bs" + Constants.K);
+          List<String> keys =
+              getLibraryMap()
+                  .values()
+                  .stream()
+                  .map(IOHelper::toPackKey)
+                  .distinct()
+                  .collect(Collectors.toList());
+          BitIndex index =
+              Try.of(() -> new BitIndex(indexPath, Constants.K, Constants.M_PRIME))
+                  .filter(i -> i.getLibraries().equals(keys))
+                  .getOrNull();
+          if (index == null) {
+            try {
+              BitIndex.write(
+                  indexPath,
+                  Constants.K,
+                  Constants.M_PRIME,
+                  keys,
+                  key -> BITSET_CACHE.getUnchecked(toLibraryPath(key)));
+              index = new BitIndex(indexPath, Constants.K, Constants.M_PRIME);
+            } catch (IOException | RuntimeException e) {
+              System.err.println("Could not create bit index " + indexPath);
+              e.printStackTrace();
+              return null;
+            }
+          }
+          bitIndex = index;
+        }
+      }
+    }
+    return bitIndex;
+  }
+
+  /**
+   * Converts a library path (without extension) to the platform-independent key used in the corpus
+   * pack, i.e. the path relative to the library directory, separated by slashes.
+   */
+  public static String toPackKey(String libraryPath) {
+    Path relPath = Constants.LIBS_DIRECTORY.relativize(Constants.FS.getPath(libraryPath));
+    List<String> names = new ArrayList<>();
+    relPath.forEach(p -> names.add(p.toString()));
+    return String.join("/", names);
+  }
+
+  private static Path fromPackKey(String key) {
+    return Constants.LIBS_DIRECTORY.resolve(Constants.FS.getPath("", key.split("/")));
+  }
+
+  /**
+   * Creates the LSH index over the MinHash sketches of all libraries of the library map on first
+   * access, missing sketches are computed and cached.
+   *
+   * @return The LSH index, keyed by library name
+   */
+  public static MinHashLSH getMinHashLSH() {
+    if (minHashLSH == null) {
+      synchronized (libraryMapMonitor) {
+        if (minHashLSH == null) {
+          MinHashLSH lsh = new MinHashLSH(Constants.LSH_ROWS);
+          Map<String, String> libMap = getLibraryMap();
+          List<String> paths = libMap.values().stream().distinct().collect(Collectors.toList());
+          Map<String, MinHash> sketches = new ConcurrentHashMap<>();
+          paths.parallelStream().forEach(p -> sketches.put(p, MINHASH_CACHE.getUnchecked(p)));
+          libMap.forEach((name, path) -> lsh.add(name, sketches.get(path)));
+          minHashLSH = lsh;
+        }
+      }
+    }
+    return minHashLSH;
+  }
+
+  /** @return The name of the family of a library, i.e. the library name without the version */
+  public static String getFamilyName(String libraryName) {
+    return libraryName.split(" ")[0];
+  }
+
+  /** Converts a key of the corpus pack back to the library path, see {@link #toPackKey} */
+  public static String toLibraryPath(String key) {
+    return fromPackKey(key).toString();
   }
 
   public static Map<String, String> getLibraryMap() {
@@ -181,15 +494,65 @@ public final class IOHelper {
     return libraryMap;
   }
 
+  /**
+   * Loads the signature of a library from the corpus pack, or from the memory-mapped binary
+   * signature or compressed JSON file (in this order of preference). Classes from binary
+   * signatures are only read as headers, their methods are loaded on first access.
+   *
+   * @param libraryPath The path of the library signature without file extension
+   * @return The list of ClassData objects of the library
+   */
   public static List<ClassData> getClassData(String libraryPath) throws IOException {
-    return getClassData(Constants.FS.getPath(libraryPath + ".json.zlib"));
+    CorpusPack pack = getCorpusPack();
+    if (pack != null) {
+      CorpusPack.Entry entry = pack.getEntry(toPackKey(libraryPath));
+      if (entry != null) {
+        return pack.getClassHeaders(entry);
+      }
+    }
+    return getFileClassData(libraryPath);
+  }
+
+  /**
+   * Loads the signature of a library from its binary signature or compressed JSON file, bypassing
+   * the corpus pack.
+   *
+   * @param libraryPath The path of the library signature without file extension
+   * @return The list of ClassData objects of the library
+   */
+  public static List<ClassData> getFileClassData(String libraryPath) throws IOException {
+    Path sigPath = Constants.FS.getPath(libraryPath + SignatureFormat.EXT);
+    if (Files.exists(sigPath)) {
+      return SignatureReader.readHeaders(sigPath);
+    }
+    return getClassData(getJsonPath(libraryPath));
+  }
+
+  /**
+   * @param libraryPath The path of the library signature without file extension
+   * @return The path of the existing JSON signature, written by any codec, or the path for a new
+   *     JSON signature written by {@link Constants#LIBRARY_CODEC}
+   */
+  public static Path getJsonPath(String libraryPath) {
+    for (Codec codec : Codecs.ALL) {
+      Path jsonPath = Constants.FS.getPath(libraryPath + JSON_EXT + codec.getExtension());
+      if (Files.exists(jsonPath)) {
+        return jsonPath;
+      }
+    }
+    return Constants.FS.getPath(libraryPath + JSON_EXT + Constants.LIBRARY_CODEC.getExtension());
   }
 
   public static List<ClassData> getClassData(Path libraryPath) throws IOException {
+    Codec codec = Codecs.forPath(libraryPath, JSON_EXT);
+    if (codec == null) {
+      throw new IOException("Not a JSON signature: " + libraryPath);
+    }
     try (Reader reader =
         new InputStreamReader(
-            new InflaterInputStream(new ByteArrayInputStream(libDataCache.get(libraryPath))),
-                StandardCharsets.UTF_8)) {
+            new ByteBufferInputStream(
+                codec.decode(ByteBuffer.wrap(libDataCache.get(libraryPath)))),
+            StandardCharsets.UTF_8)) {
       return Utils.getGson().fromJson(reader, CLASSDATA_LIST_TYPE);
     } catch (ExecutionException ee) {
       if (ee.getCause() instanceof IOException) {
@@ -242,6 +605,91 @@ public final class IOHelper {
         .onFailure(errorHandler);
   }
 
+  /**
+   * Computes the key of the app class cache for the given app, consisting of the SHA-256 of the APK
+   * and a hash of all settings that influence the extraction of its classes.
+   *
+   * @param appPath The path of the APK
+   * @return The cache key, or null if the app cannot be cached (e.g. a directory)
+   */
+  public static String getAppCacheKey(Path appPath) {
+    if (!Files.isRegularFile(appPath)) {
+      return null;
+    }
+    File androidJar = Constants.ANDROID_JAR.toFile();
+    String settings =
+        APP_CACHE_VERSION
+            + ";"
+            + SignatureFormat.VERSION
+            + ";"
+            + androidJar.getAbsolutePath()
+            + ";"
+            + androidJar.length()
+            + ";"
+            + androidJar.lastModified();
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      String settingsHash =
+          BaseEncoding.base16().encode(digest.digest(settings.getBytes(StandardCharsets.UTF_8)));
+      return getSHA256(appPath) + "-" + settingsHash.substring(0, 16);
+    } catch (NoSuchAlgorithmException nsa) {
+      throw new RuntimeException(
+          "This platform does not support SHA-256 hash algorithm, file hashing failed!");
+    }
+  }
+
+  /**
+   * Loads the cached classes of an app.
+   *
+   * @param cacheKey The key from {@link #getAppCacheKey(Path)}
+   * @return The cached classes, or null if there is no (readable) cache entry
+   */
+  public static List<ClassData> getCachedAppClasses(String cacheKey) {
+    Path cachePath = Constants.APP_CACHE_PATH.resolve(cacheKey + SignatureFormat.EXT);
+    if (Files.notExists(cachePath)) {
+      return null;
+    }
+    return Try.of(() -> SignatureReader.read(cachePath))
+        .onFailure(
+            t -> {
+              System.err.println("Could not read cached app classes " + cachePath);
+              t.printStackTrace();
+            })
+        .getOrElse(() -> null);
+  }
+
+  /**
+   * Stores the classes of an app in the app cache.
+   *
+   * @param cacheKey The key from {@link #getAppCacheKey(Path)}
+   * @param appClasses The classes extracted from the app
+   */
+  public static void cacheAppClasses(String cacheKey, List<ClassData> appClasses) {
+    Path cachePath = Constants.APP_CACHE_PATH.resolve(cacheKey + SignatureFormat.EXT);
+    Try.run(
+            () -> {
+              Files.createDirectories(cachePath.getParent());
+              SignatureWriter.write(appClasses, cachePath);
+            })
+        .onFailure(
+            t -> {
+              System.err.println("Could not cache app classes to " + cachePath);
+              t.printStackTrace();
+            });
+  }
+
+  /** @return The SHA-256 of the remaining bytes of the buffer, as hex string */
+  public static String getSHA256(ByteBuffer data) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(data.duplicate());
+      return BaseEncoding.base16().encode(digest.digest());
+    } catch (NoSuchAlgorithmException nsa) {
+      throw new RuntimeException(
+          "This platform does not support SHA-256 hash algorithm, file hashing failed!");
+    }
+  }
+
   public static String getSHA256(Path f) {
     try (SeekableByteChannel bc = Files.newByteChannel(f)) {
       ByteBuffer bb = ByteBuffer.allocate(8192);
@@ -254,7 +702,7 @@ public final class IOHelper {
         }
         bb.clear();
       } while (numRead != -1);
-      return DatatypeConverter.printHexBinary(digest.digest());
+      return BaseEncoding.base16().encode(digest.digest());
     } catch (NoSuchAlgorithmException nsa) {
       throw new RuntimeException(
           "This platform does not support SHA-256 hash algorithm, file hashing failed!");
@@ -0,0 +1,45 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+/**
+ * The innermost loops of the BitSet and k-gram comparisons. On Java 17 and later, the
+ * multi-release JAR replaces this class by a variant using the Vector API (see src/main/java17),
+ * which falls back to the {@link ScalarKernels} unless the JVM was started with --add-modules
+ * jdk.incubator.vector.
+ */
+public final class Kernels {
+
+  private Kernels() {}
+
+  /** @return The name of the implementation in use */
+  public static String getName() {
+    return "scalar";
+  }
+
+  /** @see ScalarKernels#andCount(long[], long[]) */
+  public static int andCount(long[] a, long[] b) {
+    return ScalarKernels.andCount(a, b);
+  }
+
+  /** @see ScalarKernels#intersectionSize(int[], int[]) */
+  public static int intersectionSize(int[] a, int[] b) {
+    return ScalarKernels.intersectionSize(a, b);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** Scalar implementation of the {@link Kernels}, for all Java versions */
+public final class ScalarKernels {
+
+  private ScalarKernels() {}
+
+  /**
+   * Counts the bits set in both bitsets, given by their words (see {@link BitSet#toLongArray()}),
+   * i.e. the cardinality of their intersection, without allocating a temporary bitset.
+   *
+   * @return popcount(a AND b)
+   */
+  public static int andCount(long[] a, long[] b) {
+    int n = Math.min(a.length, b.length);
+    // independent sums allow the CPU to overlap the popcount instructions
+    int c0 = 0;
+    int c1 = 0;
+    int c2 = 0;
+    int c3 = 0;
+    int i = 0;
+    for (; i + 3 < n; i += 4) {
+      c0 += Long.bitCount(a[i] & b[i]);
+      c1 += Long.bitCount(a[i + 1] & b[i + 1]);
+      c2 += Long.bitCount(a[i + 2] & b[i + 2]);
+      c3 += Long.bitCount(a[i + 3] & b[i + 3]);
+    }
+    for (; i < n; i++) {
+      c0 += Long.bitCount(a[i] & b[i]);
+    }
+    return c0 + c1 + c2 + c3;
+  }
+
+  /**
+   * Counts the common elements of two sorted int arrays. If one array is much shorter, its
+   * elements are searched in the longer one, otherwise both arrays are merged.
+   *
+   * @param a Sorted array without duplicates
+   * @param b Sorted array without duplicates
+   * @return The size of the intersection of both arrays
+   */
+  public static int intersectionSize(int[] a, int[] b) {
+    if (a.length > b.length) {
+      int[] t = a;
+      a = b;
+      b = t;
+    }
+    int count = 0;
+    if (a.length * 16 < b.length) {
+      int from = 0;
+      for (int x : a) {
+        int idx = Arrays.binarySearch(b, from, b.length, x);
+        if (idx >= 0) {
+          count++;
+          from = idx + 1;
+        } else {
+          from = -idx - 1;
+        }
+      }
+      return count;
+    }
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+}
@@ -30,14 +30,13 @@ import de.milux.ordol.gson.MethodDataAdapter;
 import de.milux.ordol.gson.UnitDataAdapter;
 import io.vavr.CheckedRunnable;
 import io.vavr.control.Try;
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-import net.objecthunter.exp4j.function.Function;
 
 import javax.annotation.Nonnull;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.BiPredicate;
+import java.util.function.DoubleBinaryOperator;
 
 public final class Utils {
 
@@ -45,7 +44,7 @@ public final class Utils {
 
   public static final java.util.function.Function<Object, String> INTERN_STRING =
       s -> s == null ? null : ((String) s).intern();
-  private static Map<String, Expression> expressionMap = new HashMap<>();
+  private static final Map<String, DoubleBinaryOperator> formulaMap = new ConcurrentHashMap<>();
   private static Gson g = null;
   private static Gson gp = null;
 
@@ -162,46 +161,17 @@ public final class Utils {
     }
   }
 
-  private static Expression getExpression(@Nonnull String formula) {
-    if (!expressionMap.containsKey(formula)) {
-      Function min =
-          new Function("min", 2) {
-            @Override
-            public double apply(double... args) {
-              return Math.min(args[0], args[1]);
-            }
-          };
-      Function max =
-          new Function("max", 2) {
-            @Override
-            public double apply(double... args) {
-              return Math.max(args[0], args[1]);
-            }
-          };
-      ExpressionBuilder eb = new ExpressionBuilder(formula).function(min).function(max);
-      if (formula.contains("size")) {
-        eb.variable("size");
-      }
-      if (formula.contains("appBsPop")) {
-        eb.variable("appBsPop");
-      }
-      Expression expression = eb.build();
-      expressionMap.put(formula, expression);
-      return expression;
-    } else {
-      return expressionMap.get(formula);
-    }
+  /** @return The compiled formula, with the variables size and appBsPop */
+  private static DoubleBinaryOperator getFormula(@Nonnull String formula) {
+    return formulaMap.computeIfAbsent(formula, f -> Formula.compile(f, "size", "appBsPop"));
   }
 
   public static double getDetectionThreshold(double size) {
-    return getExpression(Constants.DETECT_THRESHOLD).setVariable("size", size).evaluate();
+    return getFormula(Constants.DETECT_THRESHOLD).applyAsDouble(size, 0.);
   }
 
   public static double getBitSetThreshold(double size, double appBsPop) {
-    return getExpression(Constants.BITSET_THRESHOLD)
-        .setVariable("size", size)
-        .setVariable("appBsPop", appBsPop)
-        .evaluate();
+    return getFormula(Constants.BITSET_THRESHOLD).applyAsDouble(size, appBsPop);
   }
 
   public static String toPercent(double val) {
@@ -211,6 +181,16 @@ public final class Utils {
     return String.format("%.5f%%", val * 100.);
   }
 
+  /**
+   * Creates a unique path for a temporary file next to the given path, to be written with
+   * StandardOpenOption.CREATE_NEW and atomically moved to the given path afterwards. Unlike
+   * Files.createTempFile, the file gets the default permissions of the target directory.
+   */
+  public static Path getTempSibling(Path path) {
+    return path.toAbsolutePath()
+        .resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+  }
+
   public static String benchmark(LongHolder th) {
     return benchmark(th, null);
   }
@@ -243,6 +223,18 @@ public final class Utils {
     return exs.submit(runnable);
   }
 
+  public static <V> Future<V> submitCallable(Callable<V> task) {
+    return exs.submit(task);
+  }
+
+  /**
+   * Runs a task in the central ExecutionService and waits for it, so that parallel streams within
+   * the task use at most {@link Constants#NUM_THREADS} threads
+   */
+  public static void invokeParallel(Runnable task) {
+    exs.invoke(ForkJoinTask.adapt(task));
+  }
+
   public static void waitForTasks() {
     waitForTasks(taskList);
   }
@@ -294,42 +286,100 @@ public final class Utils {
     return pIdx;
   }
 
-  public static BitSet makeBitSet(Set<Integer> hashes, int prime) {
+  public static BitSet makeBitSet(int[] hashes, int prime) {
     BitSet bitField = new BitSet();
     for (int h : hashes) {
-      int bit = (int) (Integer.toUnsignedLong(h) % prime);
-      // use linear probing until an unset bit is found or all bits are set
-      int pr = 0;
-      while (bitField.get(bit) && ++pr <= prime) {
-        bit = (bit + 1) % prime;
-      }
-      bitField.set(bit);
       // all bits are set, exit loop
-      if (pr > prime) {
+      if (!setHashBit(bitField, h, prime)) {
         break;
       }
     }
     return bitField;
   }
 
-  public static BitSet[] makeBitSets(Set<Integer> hashes) {
-    BitSet[] bHashes = new BitSet[Constants.PRIMES.length];
+  /**
+   * Sets the bit for the given hash, using linear probing until an unset bit is found.
+   *
+   * @return false if all bits had already been set
+   */
+  private static boolean setHashBit(BitSet bitField, int h, int prime) {
+    int bit = (int) (Integer.toUnsignedLong(h) % prime);
+    int pr = 0;
+    while (bitField.get(bit) && ++pr <= prime) {
+      bit = (bit + 1) % prime;
+    }
+    bitField.set(bit);
+    return pr <= prime;
+  }
+
+  /** @return The words of the bitsets for all {@link Constants#PRIMES}, see {@link #andCount} */
+  public static long[][] makeBitSets(int[] hashes) {
+    long[][] bHashes = new long[Constants.PRIMES.length][];
     for (int i = 0; i < Constants.PRIMES.length; i++) {
       int prime = Constants.PRIMES[i];
-      bHashes[i] = makeBitSet(hashes, prime);
+      bHashes[i] = makeBitSet(hashes, prime).toLongArray();
     }
     return bHashes;
   }
 
+  /**
+   * Counts the bits set in both bitsets, given by their words (see {@link BitSet#toLongArray()}),
+   * i.e. the cardinality of their intersection, without allocating a temporary bitset.
+   *
+   * @return popcount(a AND b)
+   */
+  public static int andCount(long[] a, long[] b) {
+    return Kernels.andCount(a, b);
+  }
+
+  /**
+   * Merges sorted int arrays into one sorted array without duplicates.
+   *
+   * @param arrays Sorted arrays, each without duplicates
+   * @return Sorted union of all arrays
+   */
+  public static int[] unionSorted(Collection<int[]> arrays) {
+    if (arrays.size() == 1) {
+      return arrays.iterator().next();
+    }
+    int size = 0;
+    for (int[] a : arrays) {
+      size += a.length;
+    }
+    int[] result = new int[size];
+    int pos = 0;
+    for (int[] a : arrays) {
+      System.arraycopy(a, 0, result, pos, a.length);
+      pos += a.length;
+    }
+    Arrays.sort(result);
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      if (n == 0 || result[n - 1] != result[i]) {
+        result[n++] = result[i];
+      }
+    }
+    return n == size ? result : Arrays.copyOf(result, n);
+  }
+
+  /**
+   * Counts the common elements of two sorted int arrays.
+   *
+   * @param a Sorted array without duplicates
+   * @param b Sorted array without duplicates
+   * @return The size of the intersection of both arrays
+   */
+  public static int intersectionSize(int[] a, int[] b) {
+    return Kernels.intersectionSize(a, b);
+  }
+
   public static double getBitSetSimilarity(
-      int primeIdx1, int primeIdx2, double divisor, BitSet[] bitSets1, BitSet[] bitSets2) {
+      int primeIdx1, int primeIdx2, double divisor, long[][] bitSets1, long[][] bitSets2) {
     if (divisor == 0.) {
       return 0.;
     } else if (primeIdx1 >= 0 && primeIdx2 >= 0) {
       int pIdx = Math.max(primeIdx1, primeIdx2);
-      BitSet tmpBs = (BitSet) bitSets1[pIdx].clone();
-      tmpBs.and(bitSets2[pIdx]);
-      return tmpBs.cardinality() / divisor;
+      return andCount(bitSets1[pIdx], bitSets2[pIdx]) / divisor;
     } else {
       // if both methods are empty, it's a perfect match, otherwise it's no match at all
       if (primeIdx1 == primeIdx2) {
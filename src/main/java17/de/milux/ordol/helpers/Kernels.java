@@ -0,0 +1,48 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+/**
+ * The innermost loops of the BitSet and k-gram comparisons, Java 17 variant of the multi-release
+ * JAR. Uses the {@link VectorKernels} if the incubating Vector API has been added to the module
+ * graph (--add-modules jdk.incubator.vector) and the system property ordol.scalar is not set,
+ * otherwise the {@link ScalarKernels}.
+ */
+public final class Kernels {
+  private static final boolean VECTOR =
+      ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+          && !Boolean.getBoolean("ordol.scalar");
+
+  private Kernels() {}
+
+  /** @return The name of the implementation in use */
+  public static String getName() {
+    return VECTOR ? VectorKernels.getName() : "scalar";
+  }
+
+  /** @see ScalarKernels#andCount(long[], long[]) */
+  public static int andCount(long[] a, long[] b) {
+    return VECTOR ? VectorKernels.andCount(a, b) : ScalarKernels.andCount(a, b);
+  }
+
+  /** @see ScalarKernels#intersectionSize(int[], int[]) */
+  public static int intersectionSize(int[] a, int[] b) {
+    return VECTOR ? VectorKernels.intersectionSize(a, b) : ScalarKernels.intersectionSize(a, b);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD variants of the {@link ScalarKernels} using the Vector API. Only referenced by {@link
+ * Kernels} if the jdk.incubator.vector module is present.
+ */
+final class VectorKernels {
+  private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+  private VectorKernels() {}
+
+  static String getName() {
+    return "vector (" + LONGS.vectorBitSize() + " bit)";
+  }
+
+  /**
+   * Counts the bits set in both bitsets. The Vector API of Java 17 has no lane-wise popcount, so
+   * the bits are added up in parallel within each lane, first in pairs of bits, then nibbles,
+   * then bytes, whose sum is finally collected in the top byte by a multiplication.
+   *
+   * @see ScalarKernels#andCount(long[], long[])
+   */
+  static int andCount(long[] a, long[] b) {
+    int n = Math.min(a.length, b.length);
+    int bound = LONGS.loopBound(n);
+    LongVector sum = LongVector.zero(LONGS);
+    int i = 0;
+    for (; i < bound; i += LONGS.length()) {
+      LongVector v = LongVector.fromArray(LONGS, a, i).and(LongVector.fromArray(LONGS, b, i));
+      v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+      v =
+          v.and(0x3333333333333333L)
+              .add(v.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+      v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+      sum = sum.add(v.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56));
+    }
+    int count = (int) sum.reduceLanes(VectorOperators.ADD);
+    for (; i < n; i++) {
+      count += Long.bitCount(a[i] & b[i]);
+    }
+    return count;
+  }
+
+  /**
+   * Counts the common elements of two sorted int arrays. Each element of the shorter array is
+   * compared at once with all elements of the block of the longer array that may contain it.
+   * Arrays of very different lengths are left to the binary search of the scalar variant.
+   *
+   * @see ScalarKernels#intersectionSize(int[], int[])
+   */
+  static int intersectionSize(int[] a, int[] b) {
+    if (a.length > b.length) {
+      int[] t = a;
+      a = b;
+      b = t;
+    }
+    if (a.length * 16 < b.length) {
+      return ScalarKernels.intersectionSize(a, b);
+    }
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    int bound = INTS.loopBound(b.length);
+    for (; i < a.length && j < bound; j += INTS.length()) {
+      int blockMax = b[j + INTS.length() - 1];
+      if (a[i] > blockMax) {
+        continue;
+      }
+      IntVector block = IntVector.fromArray(INTS, b, j);
+      for (; i < a.length && a[i] <= blockMax; i++) {
+        if (block.compare(VectorOperators.EQ, a[i]).anyTrue()) {
+          count++;
+        }
+      }
+    }
+    // merge the remaining elements
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+}
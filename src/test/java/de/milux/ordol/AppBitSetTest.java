@@ -0,0 +1,68 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertEquals;
+
+import de.milux.ordol.data.AppBitSet;
+import de.milux.ordol.helpers.Utils;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class AppBitSetTest {
+
+  @Test
+  public void testRemoveClasses() {
+    // a small prime produces long probing clusters, wrapping around the end of the bitset
+    testRemoveClasses(1009, 3000);
+    // a large prime spreads the bits far beyond the number of hashes
+    testRemoveClasses(Constants.M_PRIME, Integer.MAX_VALUE);
+  }
+
+  private static void testRemoveClasses(int prime, int range) {
+    Random random = new Random(42);
+    List<int[]> classes = new ArrayList<>();
+    for (int c = 0; c < 60; c++) {
+      classes.add(
+          IntStream.generate(() -> random.nextInt(range) - range / 2)
+              .limit(random.nextInt(20))
+              .sorted()
+              .distinct()
+              .toArray());
+    }
+    AppBitSet appBits = new AppBitSet(classes, prime);
+    List<int[]> remaining = new ArrayList<>(classes);
+    Collections.shuffle(remaining, random);
+    while (!remaining.isEmpty()) {
+      BitSet expected = Utils.makeBitSet(Utils.unionSorted(remaining), prime);
+      assertEquals(expected, appBits.getBits());
+      assertEquals(expected.cardinality(), appBits.cardinality());
+      BitSet cleared = new BitSet();
+      appBits.remove(remaining.remove(remaining.size() - 1), cleared::set);
+      expected.andNot(Utils.makeBitSet(Utils.unionSorted(remaining), prime));
+      assertEquals(expected, cleared);
+    }
+    assertEquals(0, appBits.cardinality());
+  }
+}
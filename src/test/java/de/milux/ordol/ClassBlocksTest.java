@@ -0,0 +1,95 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static de.milux.ordol.Constants.FS;
+import static de.milux.ordol.Constants.LIBS_DIRECTORY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.milux.ordol.algo.ApproxMethodMatching;
+import de.milux.ordol.data.ClassBlocks;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.MethodData;
+import de.milux.ordol.helpers.IOHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class ClassBlocksTest {
+  private static final String[] SUPER_CLASSES = {null, "java.lang.Object", "a.A", "a.B"};
+
+  /** @return Copies of random corpus classes with random library superclasses */
+  private static List<ClassData> randomClasses(List<ClassData> corpus, Random random, int count) {
+    List<ClassData> classes = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ClassData cd = corpus.get(random.nextInt(corpus.size()));
+      List<MethodData> methods =
+          random.nextInt(10) == 0 ? Collections.emptyList() : new ArrayList<>(cd);
+      classes.add(
+          new ClassData(
+              cd.name,
+              methods,
+              SUPER_CLASSES[random.nextInt(SUPER_CLASSES.length)],
+              null,
+              cd.interfaces));
+    }
+    return classes;
+  }
+
+  @Test
+  public void testCandidates() throws Exception {
+    List<ClassData> corpus = new ArrayList<>();
+    for (String version : new String[] {"1.0.0.json.zlib", "1.2.5.json.zlib"}) {
+      corpus.addAll(IOHelper.getClassData(LIBS_DIRECTORY.resolve(FS.getPath("dagger", version))));
+    }
+    Random random = new Random(42);
+    List<ClassData> appClasses = randomClasses(corpus, random, 80);
+    List<ClassData> libClasses = randomClasses(corpus, random, 40);
+    int matches = 0;
+    boolean allowAdditional = Constants.ALLOW_ADDITIONAL_APP_CLASS_METHODS;
+    try {
+      for (boolean allow : new boolean[] {false, true}) {
+        Constants.ALLOW_ADDITIONAL_APP_CLASS_METHODS = allow;
+        ClassBlocks blocks = new ClassBlocks(appClasses);
+        for (ClassData lc : libClasses) {
+          int[] candidates = blocks.getCandidates(lc);
+          for (int i = 0; i < appClasses.size(); i++) {
+            if (new ApproxMethodMatching(lc, appClasses.get(i)).getClassSimilarity() > 0.) {
+              assertTrue(lc.name + " -> " + i, Arrays.binarySearch(candidates, i) >= 0);
+              matches++;
+            }
+          }
+          int[] sizeCandidates =
+              IntStream.range(0, appClasses.size())
+                  .filter(i -> allow || appClasses.get(i).size() <= lc.size())
+                  .toArray();
+          assertArrayEquals(sizeCandidates, blocks.getSizeCandidates(lc));
+        }
+      }
+    } finally {
+      Constants.ALLOW_ADDITIONAL_APP_CLASS_METHODS = allowAdditional;
+    }
+    assertTrue(matches > 0);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import de.milux.ordol.binary.Codec;
+import de.milux.ordol.binary.Codecs;
+import de.milux.ordol.binary.LZCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+
+public class CodecTest {
+
+  private static byte[][] getTestData() {
+    Random random = new Random(42);
+    byte[] randomBytes = new byte[100_000];
+    random.nextBytes(randomBytes);
+    // sparse data, similar to bitsets
+    byte[] sparse = new byte[100_000];
+    for (int i = 0; i < 5_000; i++) {
+      sparse[random.nextInt(sparse.length)] = (byte) (1 << random.nextInt(8));
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2_000; i++) {
+      sb.append("{\"instr\":\"virtualinvoke <java.lang.Object: int hashCode()>\",\"id\":")
+          .append(random.nextInt(100))
+          .append('}');
+    }
+    return new byte[][] {
+      new byte[0],
+      "a".getBytes(StandardCharsets.UTF_8),
+      "abcdabcdabcdabcdabcdabcdabcdabcd".getBytes(StandardCharsets.UTF_8),
+      new byte[70_000],
+      randomBytes,
+      sparse,
+      sb.toString().getBytes(StandardCharsets.UTF_8)
+    };
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    for (Codec codec : Codecs.ALL) {
+      for (byte[] data : getTestData()) {
+        ByteBuffer decoded = codec.decode(ByteBuffer.wrap(codec.encode(data)));
+        assertEquals(codec.getName(), ByteBuffer.wrap(data), decoded);
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidLZLength() {
+    byte[] encoded = new LZCodec().encode(new byte[70_000]);
+    for (int n : new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, 70_000 * 255}) {
+      ByteBuffer corrupt = ByteBuffer.wrap(encoded.clone());
+      corrupt.putInt(0, n);
+      try {
+        new LZCodec().decode(corrupt);
+        fail("Accepted length " + n);
+      } catch (IOException expected) {
+        // corrupt data must not cause huge allocations
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertEquals;
+
+import de.milux.ordol.data.CompressedBitSet;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CompressedBitSetTest {
+
+  /** @return Bitsets producing array, bitmap and run containers, and mixtures of them */
+  private static List<BitSet> getTestBitSets() {
+    Random random = new Random(42);
+    List<BitSet> bitSets = new ArrayList<>();
+    bitSets.add(new BitSet());
+    for (double density : new double[] {0.001, 0.02, 0.2, 0.7}) {
+      BitSet bitSet = new BitSet();
+      for (int i = 0; i < 1 << 20; i++) {
+        if (random.nextDouble() < density) {
+          bitSet.set(i);
+        }
+      }
+      bitSets.add(bitSet);
+    }
+    BitSet runs = new BitSet();
+    for (int i = 0; i < 200; i++) {
+      int from = random.nextInt(1 << 20);
+      runs.set(from, from + random.nextInt(5000));
+    }
+    bitSets.add(runs);
+    BitSet full = new BitSet();
+    full.set(0, 3 << 16);
+    full.set(8388592);
+    bitSets.add(full);
+    return bitSets;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    for (BitSet bitSet : getTestBitSets()) {
+      CompressedBitSet compressed = CompressedBitSet.of(bitSet);
+      assertEquals(bitSet.cardinality(), compressed.cardinality());
+      assertEquals(bitSet, compressed.toBitSet());
+      CompressedBitSet read =
+          CompressedBitSet.valueOf(ByteBuffer.wrap(compressed.toByteArray()));
+      assertEquals(bitSet, read.toBitSet());
+    }
+  }
+
+  @Test
+  public void testAndCardinality() {
+    List<BitSet> bitSets = getTestBitSets();
+    for (BitSet a : bitSets) {
+      for (BitSet b : bitSets) {
+        BitSet and = (BitSet) a.clone();
+        and.and(b);
+        assertEquals(
+            and.cardinality(), CompressedBitSet.of(a).andCardinality(CompressedBitSet.of(b)));
+        assertEquals(
+            and.cardinality(),
+            CompressedBitSet.of(a).andCardinality(CompressedBitSet.ofBitmaps(b)));
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static de.milux.ordol.Constants.FS;
+import static de.milux.ordol.Constants.LIBS_DIRECTORY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import de.milux.ordol.binary.CorpusPack;
+import de.milux.ordol.binary.SignatureWriter;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.helpers.IOHelper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CorpusPackTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static List<ClassData> load(String version) throws Exception {
+    return IOHelper.getClassData(LIBS_DIRECTORY.resolve(FS.getPath("dagger", version)));
+  }
+
+  private static byte[] signature(ClassData cd) {
+    SignatureWriter sw = new SignatureWriter(new int[0]);
+    sw.add(cd);
+    return sw.toByteArray();
+  }
+
+  @Test
+  public void testClassDeduplication() throws Exception {
+    List<ClassData> v122 = load("1.2.2.json.zlib");
+    List<ClassData> v125 = load("1.2.5.json.zlib");
+    Path packPath = tmp.getRoot().toPath().resolve("test.pack");
+    try (CorpusPack.Writer writer = new CorpusPack.Writer(packPath)) {
+      writer.add("dagger 1.2.2", "dagger 1.2.2", v122);
+      // a separately loaded copy of the same version must not add any classes
+      writer.add("dagger 1.2.2 copy", "dagger 1.2.2", load("1.2.2.json.zlib"));
+      writer.add("dagger 1.2.5", "dagger 1.2.5", v125);
+      assertEquals(2 * v122.size() + v125.size(), writer.getTotalClassCount());
+      assertTrue(writer.getClassCount() < v122.size() + v125.size());
+      writer.finish();
+    }
+    try (CorpusPack pack = new CorpusPack(packPath)) {
+      CorpusPack.Entry e122 = pack.getEntry("dagger 1.2.2");
+      CorpusPack.Entry e125 = pack.getEntry("dagger 1.2.5");
+      assertArrayEquals(e122.classIds, pack.getEntry("dagger 1.2.2 copy").classIds);
+      // distinct classes of one library are stored separately
+      assertEquals(v122.size(), Arrays.stream(e122.classIds).distinct().count());
+      assertEquals(v125.size(), Arrays.stream(e125.classIds).distinct().count());
+      int shared = 0;
+      for (int i = 0; i < v122.size(); i++) {
+        for (int j = 0; j < v125.size(); j++) {
+          boolean sameContent = Arrays.equals(signature(v122.get(i)), signature(v125.get(j)));
+          if (sameContent) {
+            // identical classes across versions are stored once and read back as one instance
+            assertEquals(e122.classIds[i], e125.classIds[j]);
+            assertSame(pack.getClassHeaders(e122).get(i), pack.getClassHeaders(e125).get(j));
+            shared++;
+          } else {
+            assertNotEquals(e122.classIds[i], e125.classIds[j]);
+          }
+        }
+      }
+      assertTrue(shared > 0);
+      assertEquals(v122.size() + v125.size() - shared, pack.getClassCount());
+      // both entries read back the classes they were created from
+      assertEquals(v122, pack.getClassData(e122));
+      assertEquals(v125, pack.getClassData(e125));
+      assertEquals(v122, pack.getClassHeaders(e122));
+      assertEquals(v125, pack.getClassHeaders(e125));
+    }
+  }
+
+  @Test
+  public void testUnfinishedWriterKeepsPack() throws Exception {
+    List<ClassData> v122 = load("1.2.2.json.zlib");
+    Path packPath = tmp.getRoot().toPath().resolve("test.pack");
+    try (CorpusPack.Writer writer = new CorpusPack.Writer(packPath)) {
+      writer.add("dagger 1.2.2", "dagger 1.2.2", v122);
+      writer.finish();
+    }
+    byte[] packed = Files.readAllBytes(packPath);
+    // e.g. a library failing to load, the writer is closed without being finished
+    try (CorpusPack.Writer writer = new CorpusPack.Writer(packPath)) {
+      writer.add("dagger 1.2.5", "dagger 1.2.5", load("1.2.5.json.zlib"));
+    }
+    assertArrayEquals(packed, Files.readAllBytes(packPath));
+    // no temporary files are left behind
+    try (Stream<Path> files = Files.list(tmp.getRoot().toPath())) {
+      assertEquals(Collections.singletonList(packPath), files.collect(Collectors.toList()));
+    }
+  }
+}
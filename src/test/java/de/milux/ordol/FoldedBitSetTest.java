@@ -0,0 +1,64 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.milux.ordol.data.CompressedBitSet;
+import de.milux.ordol.data.FoldedBitSet;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+
+public class FoldedBitSetTest {
+  private static final int BITS = 1 << 20;
+
+  private static BitSet randomBitSet(Random random, double density) {
+    BitSet bitSet = new BitSet();
+    for (int i = 0; i < BITS; i++) {
+      if (random.nextDouble() < density) {
+        bitSet.set(i);
+      }
+    }
+    return bitSet;
+  }
+
+  @Test
+  public void testUpperBound() {
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      CompressedBitSet app = CompressedBitSet.of(randomBitSet(random, random.nextDouble() * .2));
+      CompressedBitSet lib = CompressedBitSet.of(randomBitSet(random, random.nextDouble() * .05));
+      int exact = app.andCardinality(lib);
+      for (int bins : new int[] {1, 1 << 10, 1 << 16}) {
+        int bound =
+            FoldedBitSet.of(lib, bins, BITS).getUpperBound(FoldedBitSet.fold(app, bins, BITS));
+        assertTrue(exact + " > " + bound, exact <= bound);
+        if (bins == 1) {
+          // a single bin only bounds by the smaller cardinality
+          assertEquals(Math.min(app.cardinality(), lib.cardinality()), bound);
+        }
+      }
+      // with one bin per bit, the bound is exact
+      FoldedBitSet perBit = FoldedBitSet.of(lib, BITS, BITS);
+      assertEquals(exact, perBit.getUpperBound(FoldedBitSet.fold(app, BITS, BITS)));
+    }
+  }
+}
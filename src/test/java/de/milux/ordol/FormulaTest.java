@@ -0,0 +1,106 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import de.milux.ordol.helpers.Formula;
+import io.vavr.control.Try;
+import java.util.function.DoubleBinaryOperator;
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+import net.objecthunter.exp4j.function.Function;
+import org.junit.Test;
+
+public class FormulaTest {
+  private static final String[] FORMULAS = {
+    Constants.BITSET_THRESHOLD,
+    Constants.DETECT_THRESHOLD,
+    "-2^2",
+    "2^3^2",
+    "-2^-2",
+    "2 * -size",
+    "2size^2",
+    "(size)(appBsPop)",
+    "7 % 3 * 2",
+    "-7 % 3",
+    "3 - -2 + +1",
+    "size / 2 / appBsPop",
+    "2e3 + 1e-2 + .5",
+    "2.5e",
+    "pi * e",
+    "sqrt(abs(size)) + log(size + 1) + log2(8) + pow(size, 0.5)",
+    "min(max(size, appBsPop), 10) - floor(appBsPop) + ceil(size / 3)",
+    "signum(-size) + cbrt(27) + exp(1) + expm1(0) + log1p(size)"
+  };
+
+  private static final Function MIN =
+      new Function("min", 2) {
+        @Override
+        public double apply(double... args) {
+          return Math.min(args[0], args[1]);
+        }
+      };
+  private static final Function MAX =
+      new Function("max", 2) {
+        @Override
+        public double apply(double... args) {
+          return Math.max(args[0], args[1]);
+        }
+      };
+
+  @Test
+  public void testSameAsExp4j() {
+    for (String formula : FORMULAS) {
+      Expression expression =
+          new ExpressionBuilder(formula)
+              .function(MIN)
+              .function(MAX)
+              .variables("size", "appBsPop")
+              .build();
+      DoubleBinaryOperator compiled = Formula.compile(formula, "size", "appBsPop");
+      for (double size : new double[] {0., 1., 37., 12345.}) {
+        for (double appBsPop : new double[] {0., 0.002, 0.5}) {
+          expression.setVariable("size", size).setVariable("appBsPop", appBsPop);
+          // exp4j fails for division by zero
+          Try<Double> expected = Try.of(expression::evaluate);
+          Try<Double> actual = Try.of(() -> compiled.applyAsDouble(size, appBsPop));
+          assertEquals(formula, expected.isFailure(), actual.isFailure());
+          if (expected.isSuccess()) {
+            assertEquals(formula, expected.get(), actual.get(), 1e-12);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInvalid() {
+    String[] invalid = {"", "1 +", "(size", "size)", "min(1)", "foo + 1", "2 * x"};
+    for (String formula : invalid) {
+      try {
+        Formula.compile(formula, "size", "appBsPop");
+        fail(formula);
+      } catch (IllegalArgumentException expected) {
+        // formula is rejected
+      }
+    }
+  }
+}
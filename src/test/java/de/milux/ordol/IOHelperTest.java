@@ -20,14 +20,38 @@ package de.milux.ordol;
 
 import static de.milux.ordol.Constants.FS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
+import de.milux.ordol.binary.Codecs;
 import de.milux.ordol.helpers.IOHelper;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class IOHelperTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void testFileSHA256() {
     String hash = IOHelper.getSHA256(FS.getPath("k9mail-alpha.apk"));
     assertEquals("88D46935DA026BDEDE3D2CFA7D46A7D9E0FE9382952E8E20054E1617A8EBF437", hash);
   }
+
+  @Test
+  public void testDecodedSHA256() throws Exception {
+    byte[] data = "[{\"name\":\"a.b.C\"},{\"name\":\"a.b.D\"}]".getBytes(StandardCharsets.UTF_8);
+    Path raw = tmp.getRoot().toPath().resolve("lib.json.raw");
+    Path zlib = tmp.getRoot().toPath().resolve("lib.json.zlib");
+    Path lz = tmp.getRoot().toPath().resolve("lib.json.lz");
+    Codecs.NONE.write(raw, data);
+    Codecs.DEFLATE_BEST.write(zlib, data);
+    Codecs.LZ.write(lz, data);
+    assertNotEquals(IOHelper.getSHA256(zlib), IOHelper.getSHA256(lz));
+    // the same signature has the same hash, whatever codec it has been written with
+    String hash = IOHelper.getSHA256(raw);
+    assertEquals(hash, IOHelper.getSHA256(Codecs.DEFLATE_BEST.read(zlib)));
+    assertEquals(hash, IOHelper.getSHA256(Codecs.LZ.read(lz)));
+  }
 }
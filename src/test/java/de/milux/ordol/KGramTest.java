@@ -18,6 +18,7 @@
  */
 package de.milux.ordol;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import de.milux.ordol.data.KGram;
@@ -96,6 +97,25 @@ public class KGramTest {
     assertEquals(expected, kGrams);
   }
 
+  @Test
+  public void testKGramHashes() {
+    Set<Integer> kGramHashes = new TreeSet<>();
+    KGram.getKGrams(
+        this.dummyBlocks,
+        this.dummyBlockSuccessors,
+        kGram -> kGramHashes.add(new KGram<>(kGram).hashCode()),
+        String.class,
+        5);
+    int[][] blockHashes =
+        this.dummyBlocks
+            .stream()
+            .map(b -> b.stream().mapToInt(String::hashCode).toArray())
+            .toArray(int[][]::new);
+    assertArrayEquals(
+        kGramHashes.stream().mapToInt(Integer::intValue).toArray(),
+        KGram.getKGramHashes(blockHashes, this.dummyBlockSuccessors, 5));
+  }
+
   @After
   public void tearDown() {
     this.dummyBlocks = null;
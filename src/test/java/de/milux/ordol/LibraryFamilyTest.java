@@ -0,0 +1,102 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.milux.ordol.data.CompressedBitSet;
+import de.milux.ordol.data.LibraryFamily;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class LibraryFamilyTest {
+  private static final int BITS = 1 << 18;
+
+  private static BitSet randomBitSet(Random random, double density) {
+    BitSet bitSet = new BitSet();
+    for (int i = 0; i < BITS; i++) {
+      if (random.nextDouble() < density) {
+        bitSet.set(i);
+      }
+    }
+    return bitSet;
+  }
+
+  /** @return The BitSets of the versions of a random family, sharing a common core */
+  private static Map<String, CompressedBitSet> randomVersions(Random random) {
+    BitSet core = randomBitSet(random, random.nextDouble() * .05);
+    Map<String, CompressedBitSet> versions = new HashMap<>();
+    int count = 1 + random.nextInt(6);
+    for (int v = 0; v < count; v++) {
+      BitSet bits = randomBitSet(random, random.nextDouble() * .05);
+      bits.or(core);
+      versions.put("lib 1." + v, CompressedBitSet.of(bits));
+    }
+    return versions;
+  }
+
+  @Test
+  public void testUpperBound() {
+    Random random = new Random(42);
+    for (int round = 0; round < 30; round++) {
+      Map<String, CompressedBitSet> versions = randomVersions(random);
+      List<String> keys = new ArrayList<>(versions.keySet());
+      keys.sort(null);
+      LibraryFamily family = LibraryFamily.of(keys, versions::get);
+      CompressedBitSet app = CompressedBitSet.of(randomBitSet(random, random.nextDouble() * .2));
+      int unionHits = app.andCardinality(family.union);
+      int intersectionHits = app.andCardinality(family.intersection);
+      for (String key : keys) {
+        int exact = app.andCardinality(versions.get(key));
+        int bound = family.getUpperBound(unionHits, intersectionHits, family.getPopCount(key));
+        assertTrue(exact + " > " + bound, exact <= bound);
+        if (keys.size() == 1) {
+          // union and intersection equal the only version
+          assertEquals(exact, bound);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    Random random = new Random(42);
+    for (int round = 0; round < 10; round++) {
+      Map<String, CompressedBitSet> versions = randomVersions(random);
+      List<String> keys = new ArrayList<>(versions.keySet());
+      keys.sort(null);
+      LibraryFamily family = LibraryFamily.of(keys, versions::get);
+      LibraryFamily read = LibraryFamily.valueOf(ByteBuffer.wrap(family.toByteArray()));
+      assertEquals(family.keys, read.keys);
+      for (String key : keys) {
+        assertEquals(versions.get(key).cardinality(), read.getPopCount(key));
+      }
+      assertEquals(-1, read.getPopCount("lib 0"));
+      assertEquals(family.union.toBitSet(), read.union.toBitSet());
+      assertEquals(family.intersection.toBitSet(), read.intersection.toBitSet());
+    }
+  }
+}
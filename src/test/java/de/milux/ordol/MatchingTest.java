@@ -0,0 +1,221 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.milux.ordol.algo.MWBMatchingAlgorithm;
+import de.milux.ordol.algo.MatchingWrapper;
+import de.milux.ordol.algo.SparseMatchingAlgorithm;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class MatchingTest {
+
+  @Test
+  public void testSparseMatchesDense() {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      int n = random.nextInt(30);
+      int m = 1 + random.nextInt(30);
+      double density = random.nextDouble();
+      // weights as produced by the MatchingWrapper, ties are frequent
+      double[][] weights = new double[n][m];
+      int[] rowStart = new int[n + 1];
+      int[] cols = new int[n * m];
+      double[] edgeWeights = new double[n * m];
+      for (int i = 0; i < n; i++) {
+        rowStart[i + 1] = rowStart[i];
+        for (int j = 0; j < m; j++) {
+          if (random.nextDouble() < density) {
+            weights[i][j] = 1. + random.nextInt(5) / 4.;
+            cols[rowStart[i + 1]] = j;
+            edgeWeights[rowStart[i + 1]++] = weights[i][j];
+          } else {
+            weights[i][j] = Double.NEGATIVE_INFINITY;
+          }
+        }
+      }
+      int[] dense = n == 0 ? new int[0] : new MWBMatchingAlgorithm(weights).getMatching();
+      int[] sparse = new SparseMatchingAlgorithm(n, m, rowStart, cols, edgeWeights).getMatching();
+      assertEquals(getWeight(weights, dense), getWeight(weights, sparse), 1e-9);
+      // no column may be matched twice
+      long matched = Arrays.stream(sparse).filter(j -> j >= 0).count();
+      assertEquals(matched, Arrays.stream(sparse).filter(j -> j >= 0).distinct().count());
+    }
+  }
+
+  @Test
+  public void testComponentsMatchDense() {
+    Random random = new Random(7);
+    for (int round = 0; round < 100; round++) {
+      int n = 1 + random.nextInt(40);
+      int m = 1 + random.nextInt(40);
+      // rows and columns only have edges within the same group, like classes of equal superclass
+      int groups = 1 + random.nextInt(8);
+      double[][] weights = new double[n][m];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < m; j++) {
+          boolean edge = i % groups == j % groups && random.nextDouble() < .5;
+          weights[i][j] = edge ? 1. + random.nextInt(5) / 4. : Double.NEGATIVE_INFINITY;
+        }
+      }
+      List<Integer> rows = IntStream.range(0, n).boxed().collect(Collectors.toList());
+      List<Integer> cols = IntStream.range(0, m).boxed().collect(Collectors.toList());
+      int[] wrapped =
+          new MatchingWrapper<>(rows, cols, weights)
+              .getMatching()
+              .stream()
+              .mapToInt(Integer::intValue)
+              .toArray();
+      int[] dense = new MWBMatchingAlgorithm(weights).getMatching();
+      assertEquals(getWeight(weights, dense), getWeight(weights, wrapped), 1e-9);
+      long matched = Arrays.stream(wrapped).filter(j -> j >= 0).count();
+      assertEquals(matched, Arrays.stream(wrapped).filter(j -> j >= 0).distinct().count());
+    }
+  }
+
+  @Test
+  public void testReusePreviousMatching() {
+    Random random = new Random(11);
+    for (int round = 0; round < 100; round++) {
+      int n = 1 + random.nextInt(40);
+      int m = 1 + random.nextInt(40);
+      int groups = 1 + random.nextInt(8);
+      double[][] sims = new double[n][m];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < m; j++) {
+          boolean edge = i % groups == j % groups && random.nextDouble() < .5;
+          sims[i][j] = edge ? random.nextInt(5) / 4. : 0.;
+        }
+      }
+      List<Integer> rows = IntStream.range(0, n).boxed().collect(Collectors.toList());
+      List<Integer> cols = IntStream.range(0, m).boxed().collect(Collectors.toList());
+      MatchingWrapper<Integer, Integer> previous =
+          new MatchingWrapper<>(rows, cols, (i, j) -> sims[i][j]);
+      previous.getMatching();
+      // change some similarities, which may split, merge or keep components
+      for (int c = random.nextInt(5); c > 0; c--) {
+        sims[random.nextInt(n)][random.nextInt(m)] = random.nextInt(5) / 4.;
+      }
+      // only the non-zero cells as candidates
+      int[][] nonZero =
+          Arrays.stream(sims)
+              .map(row -> IntStream.range(0, m).filter(j -> row[j] != 0.).toArray())
+              .toArray(int[][]::new);
+      int[] reused =
+          new MatchingWrapper<>(
+                  rows, cols, (i, j) -> sims[i][j], (Integer i) -> nonZero[i], previous, false)
+              .getMatching()
+              .stream()
+              .mapToInt(Integer::intValue)
+              .toArray();
+      double[][] weights = new double[n][m];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < m; j++) {
+          weights[i][j] = sims[i][j] == 0. ? Double.NEGATIVE_INFINITY : 1. + sims[i][j];
+        }
+      }
+      int[] dense = new MWBMatchingAlgorithm(weights).getMatching();
+      assertEquals(getWeight(weights, dense), getWeight(weights, reused), 1e-9);
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    Random random = new Random(13);
+    // the last round has a component large enough to be matched in parallel
+    int[] sizes = {1, 2, 5, 20, 40, 40, 40, 150};
+    for (int size : sizes) {
+      int n = size;
+      boolean large = size == sizes[sizes.length - 1];
+      int m = large ? size : 1 + random.nextInt(size + 10);
+      double density = large ? .9 : random.nextDouble();
+      double[][] sims = new double[n][m];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < m; j++) {
+          sims[i][j] = random.nextDouble() < density ? random.nextInt(5) / 4. : 0.;
+        }
+      }
+      List<Integer> rows = IntStream.range(0, n).boxed().collect(Collectors.toList());
+      List<Integer> cols = IntStream.range(0, m).boxed().collect(Collectors.toList());
+      int[][] nonZero =
+          Arrays.stream(sims)
+              .map(row -> IntStream.range(0, m).filter(j -> row[j] != 0.).toArray())
+              .toArray(int[][]::new);
+      for (Function<Integer, int[]> candidates :
+          Arrays.<Function<Integer, int[]>>asList(null, i -> nonZero[i])) {
+        MatchingWrapper<Integer, Integer> sequential =
+            new MatchingWrapper<>(rows, cols, (i, j) -> sims[i][j], candidates, false);
+        MatchingWrapper<Integer, Integer> parallel =
+            new MatchingWrapper<>(rows, cols, (i, j) -> sims[i][j], candidates, true);
+        assertArrayEquals(sequential.getWeights(), parallel.getWeights());
+        assertEquals(sequential.getMatching(), parallel.getMatching());
+      }
+    }
+  }
+
+  @Test
+  public void testNonPositiveWeightsNotMatched() {
+    // the single row and column components are matched greedily, the 2x2 one by a solver
+    double[][] weights = {
+      {0., Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY},
+      {Double.NEGATIVE_INFINITY, -1., Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY},
+      {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, 2., 0.},
+      {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, -1., 1.}
+    };
+    List<Integer> idx = IntStream.range(0, 4).boxed().collect(Collectors.toList());
+    MatchingWrapper<Integer, Integer> mw = new MatchingWrapper<>(idx, idx, weights);
+    assertEquals(Arrays.asList(-1, -1, 2, 3), mw.getMatching());
+    // the weights of pairs without an edge are kept
+    assertEquals(-1., mw.getWeight(1, 1), 0.);
+    assertEquals(Double.NEGATIVE_INFINITY, mw.getWeight(0, 1), 0.);
+  }
+
+  @Test
+  public void testPrunedSimilarityKept() {
+    double[][] sims = {{.2, .8}, {.5, 0.}};
+    List<Integer> idx = IntStream.range(0, 2).boxed().collect(Collectors.toList());
+    MatchingWrapper<Integer, Integer> mw =
+        new MatchingWrapper<>(
+            idx, idx, (i, j) -> sims[i][j], sim -> sim < .3 ? Double.NEGATIVE_INFINITY : sim);
+    assertEquals(Arrays.asList(1, 0), mw.getMatching());
+    assertEquals(.2, mw.getWeight(0, 0), 0.);
+    assertEquals(0., mw.getWeight(1, 1), 0.);
+    assertArrayEquals(sims, mw.getWeights());
+  }
+
+  private static double getWeight(double[][] weights, int[] matching) {
+    double sum = 0.;
+    for (int i = 0; i < matching.length; i++) {
+      if (matching[i] >= 0) {
+        assertTrue(weights[i][matching[i]] > Double.NEGATIVE_INFINITY);
+        sum += weights[i][matching[i]];
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol;
+
+import static de.milux.ordol.Constants.FS;
+import static de.milux.ordol.Constants.LIBS_DIRECTORY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.milux.ordol.binary.SignatureReader;
+import de.milux.ordol.binary.SignatureWriter;
+import de.milux.ordol.data.ClassData;
+import de.milux.ordol.data.MethodData;
+import de.milux.ordol.data.UnitData;
+import de.milux.ordol.helpers.IOHelper;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.Test;
+
+public class SignatureTest {
+
+  @Test
+  public void testSignatureRoundTrip() throws Exception {
+    List<ClassData> dagger =
+        IOHelper.getClassData(LIBS_DIRECTORY.resolve(FS.getPath("dagger", "1.2.2.json.zlib")));
+    byte[] sig = new SignatureWriter().addAll(dagger).toByteArray();
+    List<ClassData> parsedList = new SignatureReader(ByteBuffer.wrap(sig)).readAll();
+    assertEquals(dagger, parsedList);
+    // ClassData.equals() does not cover all fields, so compare the remaining ones, too
+    for (int c = 0; c < dagger.size(); c++) {
+      ClassData cd = dagger.get(c);
+      ClassData pcd = parsedList.get(c);
+      assertEquals(cd.interfaces, pcd.interfaces);
+      assertArrayEquals(cd.getKGramHashArray(), pcd.getKGramHashArray());
+      for (int m = 0; m < cd.size(); m++) {
+        MethodData md = cd.get(m);
+        MethodData pmd = pcd.get(m);
+        assertEquals(md.ctph, pmd.ctph);
+        assertEquals(md.refs, pmd.refs);
+        assertEquals(md.idxInClass, pmd.idxInClass);
+        assertArrayEquals(md.getKGramHashArray(), pmd.getKGramHashArray());
+        for (int u = 0; u < md.instr.size(); u++) {
+          UnitData ud = md.instr.get(u);
+          UnitData pud = pmd.instr.get(u);
+          assertArrayEquals(ud.refTypes, pud.refTypes);
+          assertEquals(ud.refMethod, pud.refMethod);
+          assertEquals(ud.hasInvocation, pud.hasInvocation);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLazyClassHeaders() throws Exception {
+    List<ClassData> dagger =
+        IOHelper.getClassData(LIBS_DIRECTORY.resolve(FS.getPath("dagger", "1.2.2.json.zlib")));
+    byte[] sig = new SignatureWriter().addAll(dagger).toByteArray();
+    List<ClassData> headers = new SignatureReader(ByteBuffer.wrap(sig)).readHeaders();
+    assertEquals(dagger.size(), headers.size());
+    for (int c = 0; c < dagger.size(); c++) {
+      ClassData cd = dagger.get(c);
+      ClassData hcd = headers.get(c);
+      // everything needed for prefiltering must be available without loading the methods
+      assertEquals(cd.weight, hcd.weight);
+      assertEquals(cd.size(), hcd.size());
+      assertEquals(cd.hashCode(), hcd.hashCode());
+      assertEquals(cd.getHashBitCount(), hcd.getHashBitCount());
+      assertArrayEquals(cd.getBitSets()[0], hcd.getBitSets()[0]);
+      assertFalse(hcd.isLoaded());
+      assertEquals(cd, hcd);
+      assertTrue(hcd.isLoaded());
+    }
+  }
+}
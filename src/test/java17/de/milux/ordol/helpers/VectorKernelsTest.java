@@ -0,0 +1,67 @@
+/*
+ * ordol
+ * 
+ * Copyright (C) 2018 Michael Lux, Fraunhofer AISEC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.milux.ordol.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class VectorKernelsTest {
+
+  @Test
+  public void testAndCount() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      // lengths around multiples of the vector length test the scalar tail
+      long[] a = random.longs(random.nextInt(100)).toArray();
+      long[] b = random.longs(random.nextInt(100)).toArray();
+      if (round % 2 == 0) {
+        // sparse words, as in the class bitsets
+        for (int i = 0; i < a.length; i++) {
+          a[i] &= random.nextLong() & random.nextLong();
+        }
+      }
+      assertEquals(ScalarKernels.andCount(a, b), VectorKernels.andCount(a, b));
+      assertEquals(ScalarKernels.andCount(a, a), VectorKernels.andCount(a, a));
+    }
+    long[] ones = IntStream.range(0, 37).mapToLong(i -> -1L).toArray();
+    assertEquals(37 * 64, VectorKernels.andCount(ones, ones));
+  }
+
+  @Test
+  public void testIntersectionSize() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      // small value ranges produce many common elements, skewed lengths the binary search
+      int range = 1 + random.nextInt(2000);
+      int[] a = random.ints(random.nextInt(300), -range, range).sorted().distinct().toArray();
+      int[] b =
+          random
+              .ints(random.nextInt(round % 3 == 0 ? 3000 : 300), -range, range)
+              .sorted()
+              .distinct()
+              .toArray();
+      assertEquals(ScalarKernels.intersectionSize(a, b), VectorKernels.intersectionSize(a, b));
+      assertEquals(ScalarKernels.intersectionSize(b, a), VectorKernels.intersectionSize(b, a));
+      assertEquals(a.length, VectorKernels.intersectionSize(a, a));
+    }
+  }
+}